@@ -0,0 +1,447 @@
+package jade.tree;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Array-backed rooted tree for very large trees: a node is an int index, and topology, labels and
+ * branch lengths are parallel arrays (parent, first child, next sibling; label offsets into one
+ * shared char pool; optional float branch lengths). That is about 30 bytes per node plus the label
+ * chars, against several objects per node for JadeNode/JadeTree. No per-node objects are created,
+ * and the traversals below need no stack at all.
+ *
+ * Children keep the order in which they were added. Trees read with readNewick() number their
+ * nodes in preorder (the root is 0), like NewickParser ids. writeNewick() quotes the labels that
+ * NewickParser would not read back as they are, so a tree survives the round trip.
+ */
+public class CompactTree {
+
+    public static final int NO_NODE = -1;
+
+    private int size = 0;
+    private int root = NO_NODE;
+    private int[] parent;
+    private int[] firstChild;
+    private int[] lastChild; // to append children in O(1)
+    private int[] nextSibling;
+    private int[] labelStart;
+    private int[] labelEnd;
+    private char[] labelPool;
+    private int poolSize = 0;
+    private float[] branchLength; // null until the first is set
+
+
+    public CompactTree () {
+        this(1024);
+    }
+
+
+    /**
+     * @param expectedNodes initial capacity; the arrays grow as needed
+     */
+    public CompactTree (int expectedNodes) {
+        int n = Math.max(expectedNodes, 16);
+        parent = new int[n];
+        firstChild = new int[n];
+        lastChild = new int[n];
+        nextSibling = new int[n];
+        labelStart = new int[n];
+        labelEnd = new int[n];
+        labelPool = new char[n * 8];
+        Arrays.fill(firstChild, NO_NODE);
+        Arrays.fill(lastChild, NO_NODE);
+        Arrays.fill(nextSibling, NO_NODE);
+    }
+
+
+    /**
+     * Add a node as the last child of parent, or as the root.
+     * @param parentID the parent, or NO_NODE for the root (which must not exist yet)
+     * @param label the label, or null for none
+     * @return the id of the new node
+     */
+    public int addNode (int parentID, CharSequence label) {
+        int id = size;
+        ensureCapacity(id + 1);
+        size++;
+        link(id, parentID);
+        setLabel(id, label);
+        return id;
+    }
+
+
+    // put a node slot (id < size) under parentID
+    private void link (int id, int parentID) {
+        parent[id] = parentID;
+        firstChild[id] = NO_NODE;
+        lastChild[id] = NO_NODE;
+        nextSibling[id] = NO_NODE;
+        if (parentID == NO_NODE) {
+            if (root != NO_NODE) {
+                throw new IllegalArgumentException("The tree already has a root (" + root + ").");
+            }
+            root = id;
+        } else {
+            if (parentID < 0 || parentID >= size || parentID == id) {
+                throw new IllegalArgumentException("No parent node " + parentID + ".");
+            }
+            if (firstChild[parentID] == NO_NODE) {
+                firstChild[parentID] = id;
+            } else {
+                nextSibling[lastChild[parentID]] = id;
+            }
+            lastChild[parentID] = id;
+        }
+    }
+
+
+    public int size () {
+        return size;
+    }
+
+
+    /**
+     * @return the root, or NO_NODE for an empty tree
+     */
+    public int getRoot () {
+        return root;
+    }
+
+
+    public int getParent (int id) {
+        return parent[id];
+    }
+
+
+    /**
+     * @return the first child, or NO_NODE for a tip
+     */
+    public int getFirstChild (int id) {
+        return firstChild[id];
+    }
+
+
+    /**
+     * @return the next child of the node's parent, or NO_NODE for the last one
+     */
+    public int getNextSibling (int id) {
+        return nextSibling[id];
+    }
+
+
+    public boolean isTip (int id) {
+        return firstChild[id] == NO_NODE;
+    }
+
+
+    public int getChildCount (int id) {
+        int n = 0;
+        for (int c = firstChild[id]; c != NO_NODE; c = nextSibling[c]) {
+            n++;
+        }
+        return n;
+    }
+
+
+    /**
+     * Set (or replace) the label of a node. The chars of a replaced label are not reclaimed.
+     * @param label the label, or null for none
+     */
+    public void setLabel (int id, CharSequence label) {
+        int len = label == null ? 0 : label.length();
+        if (poolSize + len > labelPool.length) {
+            labelPool = Arrays.copyOf(labelPool, Math.max(labelPool.length * 2, poolSize + len));
+        }
+        for (int i = 0; i < len; i++) {
+            labelPool[poolSize + i] = label.charAt(i);
+        }
+        labelStart[id] = poolSize;
+        poolSize += len;
+        labelEnd[id] = poolSize;
+    }
+
+
+    /**
+     * @return the label, or "" if there is none
+     */
+    public String getLabel (int id) {
+        return new String(labelPool, labelStart[id], labelEnd[id] - labelStart[id]);
+    }
+
+
+    /**
+     * @return true if the label of the node starts with prefix; no String is created
+     */
+    public boolean labelStartsWith (int id, String prefix) {
+        int len = prefix.length();
+        if (labelEnd[id] - labelStart[id] < len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (labelPool[labelStart[id] + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Append the label of the node to out as it is (unquoted), without creating a String.
+     */
+    public void appendLabel (int id, Appendable out) throws IOException {
+        for (int i = labelStart[id]; i < labelEnd[id]; i++) {
+            out.append(labelPool[i]);
+        }
+    }
+
+
+    /**
+     * @param bl the length of the branch to the parent, or NaN for none
+     */
+    public void setBranchLength (int id, float bl) {
+        if (branchLength == null) {
+            if (Float.isNaN(bl)) {
+                return;
+            }
+            branchLength = new float[parent.length];
+            Arrays.fill(branchLength, Float.NaN);
+        }
+        branchLength[id] = bl;
+    }
+
+
+    /**
+     * @return the length of the branch to the parent, or NaN if there is none
+     */
+    public float getBranchLength (int id) {
+        return branchLength == null ? Float.NaN : branchLength[id];
+    }
+
+
+    public boolean hasBranchLengths () {
+        return branchLength != null;
+    }
+
+
+    /**
+     * @return the nodes of the subtree of start in preorder (parents first, children in order)
+     */
+    public PrimitiveIterator.OfInt preorder (final int start) {
+        return new PrimitiveIterator.OfInt() {
+            private int next = size == 0 ? NO_NODE : start;
+
+            @Override
+            public boolean hasNext () {
+                return next != NO_NODE;
+            }
+
+            @Override
+            public int nextInt () {
+                if (next == NO_NODE) {
+                    throw new NoSuchElementException();
+                }
+                int cur = next;
+                if (firstChild[cur] != NO_NODE) {
+                    next = firstChild[cur];
+                } else {
+                    // up to the first ancestor (within the subtree) with a next sibling
+                    int nd = cur;
+                    while (nd != start && nextSibling[nd] == NO_NODE) {
+                        nd = parent[nd];
+                    }
+                    next = nd == start ? NO_NODE : nextSibling[nd];
+                }
+                return cur;
+            }
+        };
+    }
+
+
+    /**
+     * @return the nodes of the subtree of start in postorder (children in order, then the parent)
+     */
+    public PrimitiveIterator.OfInt postorder (final int start) {
+        return new PrimitiveIterator.OfInt() {
+            private int next = size == 0 ? NO_NODE : leftmostTip(start);
+
+            @Override
+            public boolean hasNext () {
+                return next != NO_NODE;
+            }
+
+            @Override
+            public int nextInt () {
+                if (next == NO_NODE) {
+                    throw new NoSuchElementException();
+                }
+                int cur = next;
+                if (cur == start) {
+                    next = NO_NODE;
+                } else if (nextSibling[cur] != NO_NODE) {
+                    next = leftmostTip(nextSibling[cur]);
+                } else {
+                    next = parent[cur];
+                }
+                return cur;
+            }
+        };
+    }
+
+
+    private int leftmostTip (int id) {
+        while (firstChild[id] != NO_NODE) {
+            id = firstChild[id];
+        }
+        return id;
+    }
+
+
+    /**
+     * Read the next tree of a newick parser. Node ids are the parser's preorder ids.
+     * @return the tree, or null if the input has no more trees
+     */
+    public static CompactTree readNewick (NewickParser np) throws IOException {
+        CompactTree tree = new CompactTree();
+        int ev;
+        // nodes close in postorder, but their (preorder) ids and parents are known, and the
+        // children of a node close in order, so each can be linked as its parent's last child
+        while ((ev = np.next()) == NewickParser.NODE) {
+            int id = np.getID();
+            int parentID = np.getParentID();
+            tree.ensureCapacity(Math.max(id, parentID) + 1);
+            if (tree.size <= id) {
+                tree.size = id + 1;
+            }
+            if (parentID == NO_NODE) {
+                tree.parent[id] = NO_NODE;
+                tree.root = id;
+            } else {
+                tree.parent[id] = parentID;
+                tree.nextSibling[id] = NO_NODE;
+                if (tree.firstChild[parentID] == NO_NODE) {
+                    tree.firstChild[parentID] = id;
+                } else {
+                    tree.nextSibling[tree.lastChild[parentID]] = id;
+                }
+                tree.lastChild[parentID] = id;
+            }
+            tree.setLabel(id, np.getLabel());
+            tree.setBranchLength(id, (float) np.getBranchLength());
+        }
+        if (ev == NewickParser.EOF) {
+            return null;
+        }
+        tree.trim();
+        return tree;
+    }
+
+
+    /**
+     * Write the subtree of a node as newick, with the trailing ';'. Iterative, and streamed to out.
+     * @param branchLengths write the branch lengths that are set
+     */
+    public void writeNewick (int start, Appendable out, boolean branchLengths) throws IOException {
+        if (size == 0) {
+            out.append(';');
+            return;
+        }
+        boolean bl = branchLengths && branchLength != null;
+        int cur = start;
+        while (true) {
+            // down to the leftmost tip, opening the internal nodes on the way
+            while (firstChild[cur] != NO_NODE) {
+                out.append('(');
+                cur = firstChild[cur];
+            }
+            // close nodes until one has a next sibling
+            while (true) {
+                appendNewickLabel(cur, out);
+                if (bl && cur != start && !Float.isNaN(branchLength[cur])) {
+                    out.append(':').append(String.valueOf(branchLength[cur]));
+                }
+                if (cur == start) {
+                    out.append(';');
+                    return;
+                }
+                if (nextSibling[cur] != NO_NODE) {
+                    out.append(',');
+                    cur = nextSibling[cur];
+                    break;
+                }
+                out.append(')');
+                cur = parent[cur];
+            }
+        }
+    }
+
+
+    // the label, in single quotes (with inner quotes doubled) if it has blanks or newick punctuation
+    private void appendNewickLabel (int id, Appendable out) throws IOException {
+        int start = labelStart[id];
+        int end = labelEnd[id];
+        boolean quote = false;
+        for (int i = start; i < end && !quote; i++) {
+            switch (labelPool[i]) {
+            case '(': case ')': case ',': case ':': case ';': case '[': case ']': case '\'':
+                quote = true;
+                break;
+            default:
+                quote = labelPool[i] <= ' ';
+            }
+        }
+        if (!quote) {
+            appendLabel(id, out);
+            return;
+        }
+        out.append('\'');
+        for (int i = start; i < end; i++) {
+            if (labelPool[i] == '\'') {
+                out.append('\'');
+            }
+            out.append(labelPool[i]);
+        }
+        out.append('\'');
+    }
+
+
+    /**
+     * Shrink the arrays to the number of nodes.
+     */
+    public void trim () {
+        resize(size);
+        labelPool = Arrays.copyOf(labelPool, poolSize);
+    }
+
+
+    private void ensureCapacity (int n) {
+        if (n > parent.length) {
+            resize(Math.max(n, parent.length * 2));
+        }
+    }
+
+
+    private void resize (int n) {
+        int old = parent.length;
+        parent = Arrays.copyOf(parent, n);
+        firstChild = Arrays.copyOf(firstChild, n);
+        lastChild = Arrays.copyOf(lastChild, n);
+        nextSibling = Arrays.copyOf(nextSibling, n);
+        labelStart = Arrays.copyOf(labelStart, n);
+        labelEnd = Arrays.copyOf(labelEnd, n);
+        if (branchLength != null) {
+            branchLength = Arrays.copyOf(branchLength, n);
+        }
+        // readNewick fills slots out of order, so new ones must start unlinked
+        for (int i = old; i < n; i++) {
+            firstChild[i] = NO_NODE;
+            lastChild[i] = NO_NODE;
+            nextSibling[i] = NO_NODE;
+            if (branchLength != null) {
+                branchLength[i] = Float.NaN;
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package jade.tree;
+
+import java.io.IOException;
+
+/**
+ * Malformed newick. An IOException, so that readers of newick files need only one catch.
+ */
+public class NewickParseException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long position;
+
+
+    public NewickParseException (String message, long position) {
+        super(message + " (at character " + position + ")");
+        this.position = position;
+    }
+
+
+    /**
+     * @return the offset of the offending character in the input
+     */
+    public long getPosition () {
+        return position;
+    }
+}
@@ -0,0 +1,399 @@
+package jade.tree;
+
+import jade.tree.deprecated.JadeNode;
+import jade.tree.deprecated.JadeTree;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streaming newick parser. Reads from a Reader through its own buffer, so the tree never has to be
+ * in memory as a String, and does constant work per character: labels are collected in a reused
+ * StringBuilder, and open nodes are kept on an explicit stack rather than the call stack, so any
+ * depth is fine.
+ *
+ * Nodes are delivered in postorder (children before parents, in newick order) through a pull loop:
+ *
+ *     while ((ev = parser.next()) == NewickParser.NODE) {
+ *         parser.getID(); parser.getParentID(); parser.getLabel(); parser.getBranchLength(); parser.getNumChildren();
+ *     }
+ *
+ * which needs no tree in memory at all; readTree() builds a JadeTree on top of it. Ids are preorder
+ * ranks within the tree (the root is 0). Several trees may follow one another in the input.
+ *
+ * Labels end at one of "(),:;[" or a line break, with surrounding blanks trimmed; a label starting
+ * with a single quote runs to the closing quote ('' is a quote). [comments] are skipped. Missing
+ * labels are "" and missing branch lengths NaN. Malformed input throws NewickParseException.
+ */
+public class NewickParser implements Closeable {
+
+    /** next() delivered a node */
+    public static final int NODE = 0;
+    /** next() reached the ';' closing a tree (after its root) */
+    public static final int TREE_END = 1;
+    /** next() reached the end of the input between trees */
+    public static final int EOF = 2;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Reader in;
+    private final char[] buf = new char[BUFFER_SIZE];
+    private int pos = 0;
+    private int lim = 0;
+    private long consumed = 0; // chars before buf[0]
+
+    // open internal nodes
+    private int[] openIDs = new int[64];
+    private int[] openChildren = new int[64];
+    private int depth = 0;
+    private int nextID = 0;
+    private boolean expectingNode = true; // after '(', ',' or the start of a tree
+
+    // the node whose label and branch length are being read
+    private boolean pending = false;
+    private int pendingID;
+    private int pendingParent;
+    private int pendingChildren;
+    private String pendingLabel;
+    private double pendingBL;
+
+    private final StringBuilder token = new StringBuilder();
+
+    // the last node delivered
+    private int id;
+    private int parentID;
+    private int numChildren;
+    private String label;
+    private double branchLength;
+
+
+    public NewickParser (Reader in) {
+        this.in = in;
+    }
+
+
+    /**
+     * @return a parser for a (UTF-8) newick file
+     */
+    public static NewickParser fromFile (String fileName) throws IOException {
+        return new NewickParser(Files.newBufferedReader(Paths.get(fileName), StandardCharsets.UTF_8));
+    }
+
+
+    /**
+     * Advance to the next node, or the end of the current tree, or of the input.
+     * @return NODE, TREE_END or EOF
+     */
+    public int next () throws IOException {
+        while (true) {
+            int c = skipBlanks();
+            switch (c) {
+            case -1:
+                if (depth > 0 || pending) {
+                    throw new NewickParseException("Unexpected end of input: missing ')' or ';'", position());
+                }
+                if (nextID > 0) {
+                    throw new NewickParseException("Tree is invalid: missing concluding semicolon", position());
+                }
+                return EOF;
+            case '(':
+                if (!expectingNode) {
+                    throw new NewickParseException("Unexpected '('", position() - 1);
+                }
+                open();
+                break;
+            case ',':
+                if (depth == 0) {
+                    throw new NewickParseException("Unexpected ',' outside parentheses", position() - 1);
+                }
+                if (!pending) {
+                    startLeaf(); // empty leaf, e.g. "(,a)"
+                }
+                expectingNode = true;
+                return deliver();
+            case ')':
+                if (pending) {
+                    pos--; // end the child first, then come back to the ')'
+                    return deliver();
+                }
+                if (depth == 0) {
+                    throw new NewickParseException("Unbalanced ')'", position() - 1);
+                }
+                if (expectingNode) {
+                    startLeaf(); // empty leaf, e.g. "(a,)"
+                    pos--;
+                    break;
+                }
+                depth--;
+                pending = true;
+                pendingID = openIDs[depth];
+                pendingParent = depth > 0 ? openIDs[depth - 1] : -1;
+                pendingChildren = openChildren[depth];
+                pendingLabel = null;
+                pendingBL = Double.NaN;
+                break;
+            case ';':
+                if (pending) {
+                    pos--;
+                    return deliver();
+                }
+                if (depth > 0) {
+                    throw new NewickParseException("Unexpected ';': missing ')'", position() - 1);
+                }
+                if (nextID == 0) {
+                    throw new NewickParseException("Empty tree", position() - 1);
+                }
+                nextID = 0;
+                expectingNode = true;
+                return TREE_END;
+            case ':':
+                if (!pending) {
+                    if (!expectingNode) {
+                        throw new NewickParseException("Unexpected ':'", position() - 1);
+                    }
+                    startLeaf();
+                }
+                if (!Double.isNaN(pendingBL)) {
+                    throw new NewickParseException("Second branch length for a node", position() - 1);
+                }
+                pendingBL = readBranchLength();
+                break;
+            default:
+                if (!pending) {
+                    if (!expectingNode) {
+                        throw new NewickParseException("Unexpected '" + (char) c + "'", position() - 1);
+                    }
+                    startLeaf();
+                } else if (pendingLabel != null || !Double.isNaN(pendingBL)) {
+                    throw new NewickParseException("Unexpected '" + (char) c + "' after a label or branch length", position() - 1);
+                }
+                pendingLabel = readLabel(c);
+                break;
+            }
+        }
+    }
+
+
+    /**
+     * Read the next tree into a JadeTree.
+     * @return the tree, or null if the input has no more trees
+     */
+    public JadeTree readTree () throws IOException {
+        ArrayList<JadeNode> done = new ArrayList<>(); // completed subtrees whose parent is still open
+        int ev;
+        while ((ev = next()) == NODE) {
+            JadeNode nd = new JadeNode();
+            nd.setName(label);
+            if (!Double.isNaN(branchLength)) {
+                nd.setBL(branchLength);
+            }
+            // the children are the last numChildren completed subtrees. not addChild(), which is linear per child
+            List<JadeNode> children = done.subList(done.size() - numChildren, done.size());
+            for (JadeNode child : children) {
+                nd.getChildren().add(child);
+                child.setParent(nd);
+            }
+            children.clear();
+            done.add(nd);
+        }
+        if (ev == EOF) {
+            return null;
+        }
+        JadeTree tree = new JadeTree();
+        tree.setRoot(done.get(0));
+        tree.processRoot();
+        return tree;
+    }
+
+
+    /** @return the preorder rank of the node within its tree */
+    public int getID () {
+        return id;
+    }
+
+
+    /** @return the preorder rank of the parent, or -1 for the root */
+    public int getParentID () {
+        return parentID;
+    }
+
+
+    /** @return the label, or "" if there is none */
+    public String getLabel () {
+        return label;
+    }
+
+
+    /** @return the branch length, or NaN if there is none */
+    public double getBranchLength () {
+        return branchLength;
+    }
+
+
+    public int getNumChildren () {
+        return numChildren;
+    }
+
+
+    public boolean isTip () {
+        return numChildren == 0;
+    }
+
+
+    /** @return the number of chars read so far */
+    public long position () {
+        return consumed + pos;
+    }
+
+
+    @Override
+    public void close () throws IOException {
+        in.close();
+    }
+
+
+    private void open () {
+        if (depth == openIDs.length) {
+            openIDs = Arrays.copyOf(openIDs, depth * 2);
+            openChildren = Arrays.copyOf(openChildren, depth * 2);
+        }
+        if (depth > 0) {
+            openChildren[depth - 1]++;
+        }
+        openIDs[depth] = nextID++;
+        openChildren[depth] = 0;
+        depth++;
+        expectingNode = true;
+    }
+
+
+    private void startLeaf () {
+        pending = true;
+        pendingID = nextID++;
+        pendingParent = depth > 0 ? openIDs[depth - 1] : -1;
+        pendingChildren = 0;
+        pendingLabel = null;
+        pendingBL = Double.NaN;
+        if (depth > 0) {
+            openChildren[depth - 1]++;
+        }
+        expectingNode = false;
+    }
+
+
+    private int deliver () {
+        id = pendingID;
+        parentID = pendingParent;
+        numChildren = pendingChildren;
+        label = pendingLabel == null ? "" : pendingLabel;
+        branchLength = pendingBL;
+        pending = false;
+        return NODE;
+    }
+
+
+    private String readLabel (int first) throws IOException {
+        token.setLength(0);
+        if (first == '\'') {
+            while (true) {
+                int c = read();
+                if (c == -1) {
+                    throw new NewickParseException("Unterminated quoted label", position());
+                }
+                if (c == '\'') {
+                    c = read();
+                    if (c != '\'') {
+                        if (c != -1) {
+                            pos--;
+                        }
+                        return token.toString();
+                    }
+                }
+                token.append((char) c);
+            }
+        }
+        token.append((char) first);
+        int c;
+        while ((c = read()) != -1 && !isLabelEnd(c)) {
+            token.append((char) c);
+        }
+        if (c != -1) {
+            pos--;
+        }
+        int end = token.length();
+        while (end > 0 && token.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return token.substring(0, end);
+    }
+
+
+    private double readBranchLength () throws IOException {
+        int c = skipBlanks();
+        token.setLength(0);
+        while (c != -1 && !isLabelEnd(c) && c > ' ') {
+            token.append((char) c);
+            c = read();
+        }
+        if (c != -1) {
+            pos--;
+        }
+        try {
+            return Double.parseDouble(token.toString());
+        } catch (NumberFormatException e) {
+            throw new NewickParseException("Bad branch length '" + token + "'", position());
+        }
+    }
+
+
+    private static boolean isLabelEnd (int c) {
+        switch (c) {
+        case '(': case ')': case ',': case ':': case ';': case '[': case '\n': case '\r':
+            return true;
+        default:
+            return false;
+        }
+    }
+
+
+    // the next char that is neither a blank nor in a [comment]
+    private int skipBlanks () throws IOException {
+        while (true) {
+            int c = read();
+            if (c == '[') {
+                do {
+                    c = read();
+                } while (c != ']' && c != -1);
+                if (c == -1) {
+                    throw new NewickParseException("Unterminated comment", position());
+                }
+            } else if (c == -1 || c > ' ') {
+                return c;
+            }
+        }
+    }
+
+
+    // after a read that returned a char, pos-- unreads it (the buffer is only refilled when empty)
+    private int read () throws IOException {
+        if (pos == lim) {
+            consumed += lim;
+            pos = 0;
+            lim = 0;
+            int n;
+            while ((n = in.read(buf, 0, buf.length)) == 0) {
+            }
+            if (n < 0) {
+                return -1;
+            }
+            lim = n;
+        }
+        return buf[pos++];
+    }
+}
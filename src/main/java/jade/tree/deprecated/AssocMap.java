@@ -0,0 +1,73 @@
+package jade.tree.deprecated;
+
+/**
+ * String -> Object map behind JadeNode.assocObject/getObject: open addressing with linear probing
+ * over parallel key/value arrays, so a lookup is a hash and usually one equals() instead of a scan
+ * of every association. Nodes rarely have more than a handful of keys, so it starts at 4 slots;
+ * there is no removal, as JadeNode never removes associations.
+ */
+final class AssocMap {
+
+    private String[] keys = new String[4];
+    private Object[] values = new Object[4];
+    private int size = 0;
+
+
+    Object get(String key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); keys[i] != null; i = (i + 1) & mask) {
+            if (keys[i].equals(key)) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+
+    void put(String key, Object value) {
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        for (; keys[i] != null; i = (i + 1) & mask) {
+            if (keys[i].equals(key)) {
+                values[i] = value;
+                return;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        size++;
+        if (size * 4 > keys.length * 3) { // keep at most 3/4 full
+            grow();
+        }
+    }
+
+
+    int size() {
+        return size;
+    }
+
+
+    private void grow() {
+        String[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new String[oldKeys.length * 2];
+        values = new Object[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != null) {
+                int i = slot(oldKeys[j], mask);
+                while (keys[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+
+    private static int slot(String key, int mask) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
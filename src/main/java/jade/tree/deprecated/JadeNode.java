@@ -8,6 +8,11 @@ import java.util.Stack;
 public class JadeNode {
     
     public static final double MIN_BRANCHLENGTH = 0.0000000000000000000001;
+    
+    /** assocObject/getObject keys backed by typed slots */
+    public static final String GRAPH_NODE = "graph_node";
+    /** a Long value goes to a long slot; any other value is kept as it is, like other keys */
+    public static final String GRAPH_NODE_ID = "gid";
 
     /*
      * common associations
@@ -19,7 +24,10 @@ public class JadeNode {
     private String name;
     private JadeNode parent;
     private ArrayList<JadeNode> children;
-    private ArrayList<NodeObject> assoc; // @note might need to make this a HashMap<String, Object> or TreeMap<String,Object>
+    // hot associations get typed slots; anything else goes in assoc (allocated on first use)
+    private long graphNodeID; // -1 if not set
+    private Object graphNode;
+    private AssocMap assoc;
     public static final String offendingChars = "[\\Q\"_~`:;/[]{}|<>,.!@#$%^&*()?+=`\\\\\\E\\s]+";
     
     /*
@@ -33,7 +41,7 @@ public class JadeNode {
         this.name = "";
         this.parent = null;
         this.children = new ArrayList<> ();
-        this.assoc = new ArrayList<>();
+        this.graphNodeID = -1;
     }
     
     public JadeNode(JadeNode parent) {
@@ -44,7 +52,7 @@ public class JadeNode {
         this.name = "";
         this.parent = parent;
         this.children = new ArrayList<> ();
-        this.assoc = new ArrayList<>();
+        this.graphNodeID = -1;
     }
     
     public JadeNode(double BL, String name, JadeNode parent) {
@@ -55,24 +63,45 @@ public class JadeNode {
         this.name = name;
         this.parent = parent;
         this.children = new ArrayList<> ();
-        this.assoc = new ArrayList<>();
+        this.graphNodeID = -1;
     }
 
     /* ---------------------------- begin node iterators --------------------------------*/
 
     public enum NodeOrder {PREORDER, POSTORDER};
 
+    // n and its descendants: PREORDER lists children before their parent, POSTORDER parents first.
+    // explicit stacks, as trees can be deeper than the call stack
     private void addDescendants(JadeNode n, List<JadeNode> children, NodeOrder order) {
 
         if (order == NodeOrder.PREORDER) {
-            for (JadeNode c : n.children){
-                addDescendants(c, children, order);
+            ArrayList<JadeNode> stack = new ArrayList<>();
+            ArrayList<Integer> nextChild = new ArrayList<>();
+            stack.add(n);
+            nextChild.add(0);
+            while (!stack.isEmpty()) {
+                int top = stack.size() - 1;
+                JadeNode cur = stack.get(top);
+                int i = nextChild.get(top);
+                if (i < cur.children.size()) {
+                    nextChild.set(top, i + 1);
+                    stack.add(cur.children.get(i));
+                    nextChild.add(0);
+                } else {
+                    children.add(cur);
+                    stack.remove(top);
+                    nextChild.remove(top);
+                }
             }
-            children.add(n);
         } else if (order == NodeOrder.POSTORDER) {
-            children.add(n);
-            for (JadeNode c : n.children){
-                addDescendants(c, children, order);
+            ArrayList<JadeNode> stack = new ArrayList<>();
+            stack.add(n);
+            while (!stack.isEmpty()) {
+                JadeNode cur = stack.remove(stack.size() - 1);
+                children.add(cur);
+                for (int i = cur.children.size() - 1; i >= 0; i--) {
+                    stack.add(cur.children.get(i));
+                }
             }
         }
     }
@@ -165,31 +194,42 @@ public class JadeNode {
      * @return string with newick representation of the subtree rooted at this node
      */
     public String getNewick (boolean bl) {
-        StringBuffer ret = new StringBuffer("");
-        for (int i = 0; i < this.getChildCount(); i++) {
-            if (i == 0) {
-                ret.append("(");
+        StringBuilder ret = new StringBuilder();
+        // explicit stack, as trees can be deeper than the call stack
+        ArrayList<JadeNode> stack = new ArrayList<>();
+        ArrayList<Integer> nextChild = new ArrayList<>();
+        stack.add(this);
+        nextChild.add(0);
+        while (!stack.isEmpty()) {
+            int top = stack.size() - 1;
+            JadeNode cur = stack.get(top);
+            int i = nextChild.get(top);
+            if (i < cur.getChildCount()) {
+                ret.append(i == 0 ? "(" : ",");
+                nextChild.set(top, i + 1);
+                stack.add(cur.getChild(i));
+                nextChild.add(0);
+                continue;
             }
-            ret.append(this.getChild(i).getNewick(bl));
-            if (bl) {
-                double branchLength = this.getChild(i).getBL();
+            if (cur.getChildCount() > 0) {
+                ret.append(")");
+            }
+            if (cur.name != null) {
+//                ret.append(GeneralUtils.cleanName(this.name));
+                //This isn't working so I am just putting this in
+                //ret.append(GeneralUtils.scrubName(this.name));
+                //ret.append(this.name.replaceAll(this.offendingChars,"_"));
+                ret.append(cur.name);
+            }
+            if (bl && top > 0) {
+                double branchLength = cur.getBL();
                 if (branchLength == 0)
                     branchLength = MIN_BRANCHLENGTH;
 
-                ret.append(":".concat(String.valueOf(branchLength)));
-            }
-            if (i == this.getChildCount()-1) {
-                ret.append(")");
-            } else {
-                ret.append(",");
+                ret.append(":").append(branchLength);
             }
-        }
-        if (this.name != null) {
-//            ret.append(GeneralUtils.cleanName(this.name));
-            //This isn't working so I am just putting this in
-            //ret.append(GeneralUtils.scrubName(this.name));
-            //ret.append(this.name.replaceAll(this.offendingChars,"_"));
-            ret.append(this.name);
+            stack.remove(top);
+            nextChild.remove(top);
         }
         return ret.toString();
     }
@@ -343,47 +383,60 @@ public class JadeNode {
     public void setDistanceToTip(double inh) {this.distance_to_tip = inh;}
     
     /**
-     * Adds or a replace a mapping of key->obj for this node
-     * @note this in an example of an O(N) routine that would be constant time
-     *         or O(log(N)) if we change the assoc datatype.
+     * @return the id of the graph node this node corresponds to, or -1 if not set. Also read and
+     *        written by getObject/assocObject with the key GRAPH_NODE_ID ("gid") and a Long value
+     */
+    public long getGraphNodeID() {return this.graphNodeID;}
+    
+    public void setGraphNodeID(long id) {this.graphNodeID = id;}
+    
+    /**
+     * @return the graph node this node corresponds to, or null if not set. Also read and written
+     *        by getObject/assocObject with the key GRAPH_NODE ("graph_node")
+     */
+    public Object getGraphNode() {return this.graphNode;}
+    
+    public void setGraphNode(Object nd) {this.graphNode = nd;}
+    
+    /**
+     * Adds or a replace a mapping of key->obj for this node. Constant time: GRAPH_NODE and
+     * GRAPH_NODE_ID go to their slots, other keys to a small hash map
      * @param key
      * @param obj Object to be stored
      */
     public void assocObject(String key, Object obj) {
-        // @todo This is written as if there could be multiple elements in assoc that
-        //        have the same key. I don't think this is true. (we should probably
-        //        return on finding a match, rather than set a test=true flag).
-        boolean test = false;
-        for (int i = 0; i < this.assoc.size(); i++) {
-            if (this.assoc.get(i).getName().compareTo(key) == 0) {
-                test = true;
-                this.assoc.get(i).setObject(obj);
+        if (GRAPH_NODE.equals(key)) {
+            this.graphNode = obj;
+            return;
+        }
+        if (GRAPH_NODE_ID.equals(key)) {
+            boolean slot = obj instanceof Long && (Long) obj >= 0;
+            this.graphNodeID = slot ? (Long) obj : -1;
+            if (slot) {
+                if (this.assoc != null) {
+                    this.assoc.put(key, null); // drop an earlier non-Long value
+                }
+                return;
             }
         }
-        if (test == false) {
-            NodeObject no = new NodeObject(key, obj);
-            this.assoc.add(no);
+        if (this.assoc == null) {
+            this.assoc = new AssocMap();
         }
+        this.assoc.put(key, obj);
     }
     
     /**
      * @return Object associated with this node and key through a previous call
      *        to assocObject, or null
-     * @note this in an example of an O(N) routine that would be constant time
-     *         or O(log(N)) if we change the assoc datatype.
      * @param key
      */
     public Object getObject(String key) {
-        // @todo This is written as if there could be multiple elements in assoc that
-        //   have the same key. I don't think this is true. (we should probably
-        //   return on finding a match, rather than continuing to walk through the list).
-        Object a = null;
-        for (int i = 0; i < this.assoc.size(); i++) {
-            if (this.assoc.get(i).getName().compareTo(key) == 0) {
-                a = this.assoc.get(i).getObject();
-            }
+        if (GRAPH_NODE.equals(key)) {
+            return this.graphNode;
+        } else if (GRAPH_NODE_ID.equals(key) && this.graphNodeID >= 0) {
+            return Long.valueOf(this.graphNodeID);
         }
-        return a;
+        return this.assoc == null ? null : this.assoc.get(key);
     }
 
 
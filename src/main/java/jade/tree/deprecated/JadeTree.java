@@ -448,15 +448,28 @@ public class JadeTree {
         if (node == null) {
             return;
         }
-        if (node.getChildCount() > 0) {
-            for (int i = 0; i < node.getChildCount(); i++) {
-                postOrderProcessRoot(node.getChild(i)); //@todo recursion could be a problem for big trees...
+        // postorder with an explicit stack, as trees can be deeper than the call stack
+        ArrayList<JadeNode> stack = new ArrayList<JadeNode>();
+        ArrayList<Integer> nextChild = new ArrayList<Integer>();
+        stack.add(node);
+        nextChild.add(0);
+        while (!stack.isEmpty()) {
+            int top = stack.size() - 1;
+            JadeNode cur = stack.get(top);
+            int i = nextChild.get(top);
+            if (i < cur.getChildCount()) {
+                nextChild.set(top, i + 1);
+                stack.add(cur.getChild(i));
+                nextChild.add(0);
+                continue;
             }
-        }
-        if (node.isExternal()) {
-            addExternalNode(node);
-        } else {
-            addInternalNode(node);
+            if (cur.isExternal()) {
+                addExternalNode(cur);
+            } else {
+                addInternalNode(cur);
+            }
+            stack.remove(top);
+            nextChild.remove(top);
         }
     }
 
@@ -0,0 +1,246 @@
+package opentree;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import opentree.constants.NodeProperty;
+import opentree.constants.RelProperty;
+import opentree.constants.RelType;
+import opentree.exceptions.TreeIngestException;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.neo4j.helpers.collection.MapUtil;
+import org.neo4j.index.lucene.unsafe.batchinsert.LuceneBatchInserterIndexProvider;
+import org.neo4j.unsafe.batchinsert.BatchInserter;
+import org.neo4j.unsafe.batchinsert.BatchInserterIndex;
+import org.neo4j.unsafe.batchinsert.BatchInserterIndexProvider;
+import org.neo4j.unsafe.batchinsert.BatchInserters;
+
+/**
+ * Offline bulk load of a synthetic tree into a NEW database (`ingestsynth --bulk`). Writes the
+ * same nodes, relationships, properties and legacy index entries as IngestSynthesisData.buildDB,
+ * but through neo4j's batch insertion API: no transactions, no logical log, nothing read back.
+ * Nothing else may have the store open while this runs, and a load that fails is deleted again
+ * (a killed one still leaves an unusable store), so it is only for fresh databases. Adding a tree
+ * to an existing database stays with the transactional IngestSynthesisData.
+ *
+ * The tree is streamed from the newick (SynthTreeStreamIngest), as in the transactional ingest.
+ */
+public class BulkIngestSynthesisData {
+
+    private static final Map<String, String> INDEX_CONFIG = MapUtil.stringMap("type", "exact", "to_lower_case", "true");
+
+    private final String graphName;
+
+    private JSONObject jsonObject; // for annotations
+    private JSONObject nodeMetaData;
+    private String synthTreeName;
+    private String rootTaxonID;
+    private String taxonomyVersion;
+    private final LinkedHashMap<String, Integer> annotationSourceIDs = new LinkedHashMap<>();
+
+
+    public BulkIngestSynthesisData (String graphName) {
+        this.graphName = graphName;
+    }
+
+
+    public void buildDB (String newickFile, String jsonFile, String taxFile) throws TreeIngestException, IOException {
+        if (new File(graphName).exists()) {
+            throw new TreeIngestException("Bulk loading needs a new database, but '" + graphName + "' exists.");
+        }
+        long start = System.nanoTime();
+
+        readAnnotations(jsonFile);
+        synthTreeName = (String) jsonObject.get("tree_id");
+        System.out.println("synthTreeName = " + synthTreeName);
+        // annotations currently does not prepend 'ott' to "root_ott_id"
+        rootTaxonID = "ott" + String.valueOf(jsonObject.get("root_ott_id"));
+        taxonomyVersion = String.valueOf(jsonObject.get("taxonomy_version"));
+
+        // the newick is streamed twice: once for the taxa to keep, once to write the tree
+        long stageStart = System.nanoTime();
+        System.out.println("Reading tree from file: " + newickFile);
+        HashSet<String> ottIDs = SynthTreeStreamIngest.collectOTTIDs(newickFile);
+        TaxonomyBulkLoader.report("newick scan", new File(newickFile).length(), "bytes", new File(newickFile).length(),
+            (System.nanoTime() - stageStart) / 1000000000.0);
+
+        TaxonomyBulkLoader.ParseResult taxa = TaxonomyBulkLoader.parse(taxFile, ottIDs,
+            Runtime.getRuntime().availableProcessors());
+
+        BatchInserter inserter = BatchInserters.inserter(graphName);
+        BatchInserterIndexProvider indexProvider = new LuceneBatchInserterIndexProvider(inserter);
+        boolean loaded = false;
+        try {
+            try {
+                BatchInserterIndex graphNodeIndex = indexProvider.nodeIndex("graphNamedNodes", INDEX_CONFIG);
+                BatchInserterIndex graphTaxUIDNodeIndex = indexProvider.nodeIndex("graphTaxUIDNodes", INDEX_CONFIG);
+                BatchInserterIndex graphOTTNodeIDIndex = indexProvider.nodeIndex("graphOTTNodeIDNodes", INDEX_CONFIG);
+                BatchInserterIndex sourceMapIndex = indexProvider.nodeIndex("sourceMapNodes", INDEX_CONFIG);
+                BatchInserterIndex synthMetaIndex = indexProvider.nodeIndex("synthMetaNodes", INDEX_CONFIG);
+                BatchInserterIndex synthRelIndex = indexProvider.relationshipIndex("synthRels", INDEX_CONFIG);
+
+                HashMap<String, Long> taxNodeIDs = TaxonomyBulkLoader.insert(taxa.taxa, inserter, graphNodeIndex,
+                    graphTaxUIDNodeIndex, graphOTTNodeIDIndex);
+
+                stageStart = System.nanoTime();
+                TreeSink sink = new TreeSink(taxNodeIDs, inserter, graphOTTNodeIDIndex, synthRelIndex);
+                SynthTreeStreamIngest.Result res = SynthTreeStreamIngest.write(newickFile, sink);
+                TaxonomyBulkLoader.report("tree nodes and rels", res.numNodes, "nodes", -1,
+                    (System.nanoTime() - stageStart) / 1000000000.0);
+
+                addMetadata(res, sink, inserter, synthMetaIndex, sourceMapIndex);
+            } finally {
+                stageStart = System.nanoTime();
+                System.out.println("Flushing indexes and shutting down the batch inserter.");
+                try {
+                    indexProvider.shutdown();
+                } finally {
+                    inserter.shutdown();
+                }
+            }
+            TaxonomyBulkLoader.report("index flush", 1, "stores", -1, (System.nanoTime() - stageStart) / 1000000000.0);
+            // only now is everything on disk
+            loaded = true;
+        } finally {
+            if (!loaded) {
+                // a partial tree in a store that opens fine is worse than no store
+                System.err.println("Bulk load failed; deleting the partial database '" + graphName + "'.");
+                deleteRecursively(new File(graphName));
+            }
+        }
+        System.out.println("Bulk loaded synthetic tree '" + synthTreeName + "' in "
+            + (System.nanoTime() - start) / 1000000000.0 + " seconds.");
+    }
+
+
+    // the store is a directory tree of files; an explicit stack, as elsewhere
+    private static void deleteRecursively (File root) {
+        ArrayList<File> stack = new ArrayList<>();
+        ArrayList<File> dirs = new ArrayList<>(); // parents before their contents
+        stack.add(root);
+        while (!stack.isEmpty()) {
+            File f = stack.remove(stack.size() - 1);
+            File[] contents = f.listFiles();
+            if (contents == null) {
+                f.delete();
+            } else {
+                dirs.add(f);
+                for (File c : contents) {
+                    stack.add(c);
+                }
+            }
+        }
+        for (int i = dirs.size() - 1; i >= 0; i--) {
+            dirs.get(i).delete();
+        }
+    }
+
+
+    private void readAnnotations (String fileName) throws IOException {
+        JSONParser jsonParser = new JSONParser();
+        try (FileReader fileReader = new FileReader(fileName)) {
+            jsonObject = (JSONObject) jsonParser.parse(fileReader);
+        } catch (ParseException e) {
+            throw new IOException("Could not parse the annotations file '" + fileName + "': " + e);
+        }
+        nodeMetaData = (JSONObject) jsonObject.get("nodes");
+        System.out.println("nodeMetaData is of size: " + nodeMetaData.size());
+    }
+
+
+    // writes the tree through the batch inserter, as SynthTreeStreamIngest closes its nodes
+    private class TreeSink implements SynthTreeStreamIngest.Sink {
+        private final HashMap<String, Long> taxNodeIDs;
+        private final BatchInserter inserter;
+        private final BatchInserterIndex graphOTTNodeIDIndex;
+        private final BatchInserterIndex synthRelIndex;
+        private final BitSet members = new BitSet();
+        private boolean membersFit = true;
+        private long synthRootID = -1; // the node named after the root taxon, if any
+
+        TreeSink (HashMap<String, Long> taxNodeIDs, BatchInserter inserter, BatchInserterIndex graphOTTNodeIDIndex,
+                BatchInserterIndex synthRelIndex) {
+            this.taxNodeIDs = taxNodeIDs;
+            this.inserter = inserter;
+            this.graphOTTNodeIDIndex = graphOTTNodeIDIndex;
+            this.synthRelIndex = synthRelIndex;
+        }
+
+        @Override
+        public long node (String otNodeID) throws TreeIngestException {
+            long id;
+            if (otNodeID.startsWith("ott")) { // taxonomy node; already exists
+                Long taxID = taxNodeIDs.get(otNodeID);
+                if (taxID == null) {
+                    throw new TreeIngestException("Taxon '" + otNodeID + "' of the tree is not in the taxonomy.");
+                }
+                id = taxID;
+            } else {
+                id = inserter.createNode(MapUtil.map(NodeProperty.OT_NODE_ID.propertyName, otNodeID));
+                graphOTTNodeIDIndex.add(id, MapUtil.map(NodeProperty.OT_NODE_ID.propertyName, otNodeID));
+            }
+            membersFit &= SynthTreeMembership.set(members, id);
+            if (otNodeID.equals(rootTaxonID)) {
+                synthRootID = id;
+            }
+            return id;
+        }
+
+        // child -> parent, as in the transactional ingest
+        @Override
+        public void edge (long childID, long parentID, String childOTNodeID, int preorder, int postorder,
+                int tipDescendants) {
+            LinkedHashMap<String, Object> props = new LinkedHashMap<>();
+            props.put("name", synthTreeName);
+            props.put(RelProperty.PREORDER.propertyName, preorder);
+            props.put(RelProperty.POSTORDER.propertyName, postorder);
+            HashMap<String, String> res = IngestSynthesisData.getAnnotations(nodeMetaData, taxonomyVersion, childOTNodeID);
+            for (Map.Entry<String, String> entry : res.entrySet()) {
+                if (EdgeAnnotations.TYPED_KEYS.contains(entry.getKey())) {
+                    props.putAll(EdgeAnnotations.encode(entry.getKey(), entry.getValue(), annotationSourceIDs));
+                } else {
+                    props.put(entry.getKey(), entry.getValue());
+                }
+            }
+            props.put("tip_descendants", tipDescendants);
+            long rel = inserter.createRelationship(childID, parentID, RelType.SYNTHCHILDOF, props);
+            synthRelIndex.add(rel, MapUtil.map("draftTreeID", synthTreeName));
+        }
+    }
+
+
+    // metadata node (pointing to the root) and source map node (pointing to the metadata node)
+    private void addMetadata (SynthTreeStreamIngest.Result res, TreeSink sink, BatchInserter inserter,
+            BatchInserterIndex synthMetaIndex, BatchInserterIndex sourceMapIndex) {
+        // no node named after the root taxon; use the newick root
+        long rootID = sink.synthRootID >= 0 ? sink.synthRootID : res.rootID;
+        String rootOTNodeID = sink.synthRootID >= 0 ? rootTaxonID : res.rootOTNodeID;
+        LinkedHashMap<String, Object> props = IngestSynthesisData.getTreeMetadata(jsonObject);
+        // edge annotations refer to sources by index into this
+        props.put(EdgeAnnotations.SOURCE_TABLE, annotationSourceIDs.keySet().toArray(new String[annotationSourceIDs.size()]));
+        props.put("root_ot_node_id", rootOTNodeID);
+        // the newick root has no SYNTHCHILDOF rel to carry its interval labels
+        props.put("root_preorder", res.rootPreorder);
+        props.put("root_postorder", res.rootPostorder);
+        if (sink.membersFit) {
+            props.put(SynthTreeMembership.MEMBER_BITS, sink.members.toLongArray());
+        }
+        long metadatanode = inserter.createNode(props);
+        inserter.createRelationship(metadatanode, rootID, RelType.SYNTHMETADATAFOR, null);
+        synthMetaIndex.add(metadatanode, MapUtil.map("name", synthTreeName));
+        System.out.println("Metadatanode = " + metadatanode);
+
+        long sourceMeta = inserter.createNode(IngestSynthesisData.getSourceMetaData(jsonObject, taxonomyVersion));
+        inserter.createRelationship(sourceMeta, metadatanode, RelType.SOURCEMETADATAFOR, null);
+        sourceMapIndex.add(sourceMeta, MapUtil.map("name", synthTreeName));
+        System.out.println("Sources node = " + sourceMeta);
+    }
+}
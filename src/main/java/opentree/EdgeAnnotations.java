@@ -0,0 +1,211 @@
+package opentree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import org.neo4j.graphdb.Relationship;
+
+/**
+ * Support/conflict annotations ("supported_by", "conflicts_with", ...) on SYNTHCHILDOF rels.
+ *
+ * These used to be stored only as flattened strings ("src:node,src:node", or
+ * "src:n1,n2&src2:n3" for the list-valued keys) which every read re-split. Trees ingested now
+ * store, for an annotation key K:
+ *
+ *   K_sources   int[]     ids into the tree's source table, the "annotation_source_table"
+ *                         String[] on its metadata node
+ *   K_offsets   int[]     list-valued keys only: nodes of source i are K_nodes[K_offsets[i] .. K_offsets[i+1])
+ *   K_nodes     String[]  source tree node ids
+ *
+ * The typed form is made by parsing the legacy string with the legacy rules, so decoded values
+ * are exactly what stringToMap/stringToMapArray gave before. Legacy DBs are still read.
+ *
+ * Decoded annotations are cached per rel (GraphServiceContext). The returned maps are shared: do
+ * not modify them.
+ */
+public class EdgeAnnotations {
+
+    public static final String SOURCE_TABLE = "annotation_source_table";
+    public static final String SOURCES_SUFFIX = "_sources";
+    public static final String OFFSETS_SUFFIX = "_offsets";
+    public static final String NODES_SUFFIX = "_nodes";
+
+    // annotations that get the typed encoding; others (if any) stay as strings
+    public static final Set<String> TYPED_KEYS = new HashSet<>(Arrays.asList("supported_by",
+        "conflicts_with", "resolves", "resolved_by", "partial_path_of", "terminal"));
+
+    // values are source -> [node ids] rather than source -> node id
+    public static final Set<String> LIST_KEYS = new HashSet<>(Arrays.asList("conflicts_with", "resolved_by"));
+
+    // key -> HashMap<String, String>, or HashMap<String, ArrayList<String>> for LIST_KEYS
+    private final HashMap<String, Object> values = new HashMap<>();
+
+
+    private EdgeAnnotations () {
+    }
+
+
+    /**
+     * Decode the annotations of a SYNTHCHILDOF rel. Use GraphServiceContext.getEdgeAnnotations,
+     * which caches the result per rel.
+     * @param rel the rel
+     * @param sourceTable the source table of the rel's synthetic tree (see
+     *     SourceDictionary.getSourceTable); may be null for trees ingested before the typed encoding
+     */
+    public static EdgeAnnotations decode (Relationship rel, String[] sourceTable) {
+        EdgeAnnotations ea = new EdgeAnnotations();
+        for (String key : TYPED_KEYS) {
+            if (rel.hasProperty(key + SOURCES_SUFFIX)) {
+                int[] sources = (int[]) rel.getProperty(key + SOURCES_SUFFIX);
+                String[] nodes = (String[]) rel.getProperty(key + NODES_SUFFIX);
+                if (LIST_KEYS.contains(key)) {
+                    int[] offsets = (int[]) rel.getProperty(key + OFFSETS_SUFFIX);
+                    HashMap<String, ArrayList<String>> res = new HashMap<>();
+                    for (int i = 0; i < sources.length; i++) {
+                        res.put(sourceTable[sources[i]],
+                            new ArrayList<>(Arrays.asList(nodes).subList(offsets[i], offsets[i + 1])));
+                    }
+                    ea.values.put(key, res);
+                } else {
+                    HashMap<String, String> res = new HashMap<>();
+                    for (int i = 0; i < sources.length; i++) {
+                        res.put(sourceTable[sources[i]], nodes[i]);
+                    }
+                    ea.values.put(key, res);
+                }
+            } else if (rel.hasProperty(key)) { // legacy string
+                String str = (String) rel.getProperty(key);
+                ea.values.put(key, LIST_KEYS.contains(key) ? parseListMap(str) : parseMap(str));
+            }
+        }
+        return ea;
+    }
+
+
+    /**
+     * Set the typed properties for one annotation on a new rel.
+     * @param rel the rel
+     * @param key the annotation key; must be in TYPED_KEYS
+     * @param flattened the annotation in the legacy flattened string form
+     * @param sourceIDs source -> id in the tree's source table; new sources are appended
+     */
+    public static void store (Relationship rel, String key, String flattened, LinkedHashMap<String, Integer> sourceIDs) {
+        for (Map.Entry<String, Object> prop : encode(key, flattened, sourceIDs).entrySet()) {
+            rel.setProperty(prop.getKey(), prop.getValue());
+        }
+    }
+
+
+    /**
+     * The typed properties for one annotation, for writers that set properties in bulk (see
+     * BulkIngestSynthesisData). Arguments as for store().
+     * @return property name -> value
+     */
+    public static LinkedHashMap<String, Object> encode (String key, String flattened, LinkedHashMap<String, Integer> sourceIDs) {
+        LinkedHashMap<String, Object> props = new LinkedHashMap<>();
+        if (LIST_KEYS.contains(key)) {
+            // an empty map would make the legacy parser throw
+            HashMap<String, ArrayList<String>> parsed = flattened.isEmpty() ? new HashMap<String, ArrayList<String>>()
+                : parseListMap(flattened);
+            int[] sources = new int[parsed.size()];
+            int[] offsets = new int[parsed.size() + 1];
+            ArrayList<String> nodes = new ArrayList<>();
+            int i = 0;
+            for (Map.Entry<String, ArrayList<String>> entry : parsed.entrySet()) {
+                sources[i] = intern(entry.getKey(), sourceIDs);
+                nodes.addAll(entry.getValue());
+                offsets[++i] = nodes.size();
+            }
+            props.put(key + SOURCES_SUFFIX, sources);
+            props.put(key + OFFSETS_SUFFIX, offsets);
+            props.put(key + NODES_SUFFIX, nodes.toArray(new String[nodes.size()]));
+        } else {
+            HashMap<String, String> parsed = parseMap(flattened);
+            int[] sources = new int[parsed.size()];
+            String[] nodes = new String[parsed.size()];
+            int i = 0;
+            for (Map.Entry<String, String> entry : parsed.entrySet()) {
+                sources[i] = intern(entry.getKey(), sourceIDs);
+                nodes[i++] = entry.getValue();
+            }
+            props.put(key + SOURCES_SUFFIX, sources);
+            props.put(key + NODES_SUFFIX, nodes);
+        }
+        return props;
+    }
+
+
+    private static int intern (String source, LinkedHashMap<String, Integer> sourceIDs) {
+        Integer id = sourceIDs.get(source);
+        if (id == null) {
+            id = sourceIDs.size();
+            sourceIDs.put(source, id);
+        }
+        return id;
+    }
+
+
+    // format: src:n1,n2&src2:n3
+    public static HashMap<String, ArrayList<String>> parseListMap (String source) {
+        HashMap<String, ArrayList<String>> res = new HashMap<>();
+        String [] props = source.split("&");
+        for (String s : props) {
+            String[] indsrc = s.split(":");
+            String srcname = indsrc[0];
+            String[] nodes = indsrc[1].split(",");
+            ArrayList<String> nodelist = new ArrayList<>(Arrays.asList(nodes));
+            res.put(srcname, nodelist);
+        }
+        return res;
+    }
+
+
+    // format: src:node,src2:node2 (also used for the source_id_map records)
+    public static HashMap<String, String> parseMap (String source) {
+        HashMap<String, String> res = new HashMap<>();
+        String [] props = source.split(",");
+        for (String s : props) {
+            String[] indsrc = s.split(":");
+            if (indsrc.length == 2) {
+                res.put(indsrc[0], indsrc[1]);
+            }
+        }
+        return res;
+    }
+
+
+    public boolean has (String key) {
+        return values.containsKey(key);
+    }
+
+
+    public Set<String> keys () {
+        return values.keySet();
+    }
+
+
+    /**
+     * @return the decoded annotation: a HashMap<String, String> of source -> node id, or for
+     *     LIST_KEYS a HashMap<String, ArrayList<String>> of source -> node ids; null if absent
+     */
+    public Object get (String key) {
+        return values.get(key);
+    }
+
+
+    /**
+     * @return the sources named by an annotation (empty if absent)
+     */
+    @SuppressWarnings("unchecked")
+    public Set<String> getSources (String key) {
+        Object val = values.get(key);
+        if (val == null) {
+            return new HashSet<>();
+        }
+        return ((Map<String, ?>) val).keySet();
+    }
+}
@@ -45,21 +45,24 @@ import org.neo4j.kernel.EmbeddedGraphDatabase;
 public abstract class GraphBase {
     GraphDatabaseAgent graphDb;
     
+    // shared indexes and caches for this db; see GraphServiceContext
+    protected final GraphServiceContext context;
+    
     // TODO get rid of junk not used
-    protected static Index<Node> graphNodeIndex;
-    protected static Index<Node> synNodeIndex;
-    protected static Index<Relationship> sourceRelIndex;
-    protected static Index<Node> sourceRootIndex;
-    protected static Index<Node> sourceMetaIndex;
-    protected static Index<Node> graphTaxUIDNodeIndex; // tax_uid is the key, the uid from the taxonomy points to this node
-    //protected static Index<Node> synTaxUIDNodeIndex;   // tax_uid is the key, this points to the synonymn node, to get the tax that this points to you need to travel synonymof
-    protected static Index<Node> graphTaxNewNodes;
-    
-    protected static Index<Node> graphOTTNodeIDIndex;
-    
-    protected static Index<Node> sourceMapIndex;
-    protected static Index<Node> synthMetaIndex; // metadata nodes for each synth tree
-    protected static Index<Relationship> synthRelIndex;
+    protected final Index<Node> graphNodeIndex;
+    protected Index<Node> synNodeIndex;
+    protected Index<Relationship> sourceRelIndex;
+    protected Index<Node> sourceRootIndex;
+    protected Index<Node> sourceMetaIndex;
+    protected final Index<Node> graphTaxUIDNodeIndex; // tax_uid is the key, the uid from the taxonomy points to this node
+    //protected Index<Node> synTaxUIDNodeIndex;   // tax_uid is the key, this points to the synonymn node, to get the tax that this points to you need to travel synonymof
+    protected Index<Node> graphTaxNewNodes;
+    
+    protected final Index<Node> graphOTTNodeIDIndex;
+    
+    protected final Index<Node> sourceMapIndex;
+    protected final Index<Node> synthMetaIndex; // metadata nodes for each synth tree
+    protected final Index<Relationship> synthRelIndex;
 
     // this is clunky, might be a better way to do this. could use the date here.
     public static final String DRAFTTREENAME = (String) GeneralConstants.DRAFT_TREE_NAME.value;
@@ -71,17 +74,16 @@ public abstract class GraphBase {
      * @param graphName
      */
     public GraphBase(String graphName) {
-        graphDb = new GraphDatabaseAgent(graphName);
-        initNodeIndexes();
+        this(new GraphServiceContext(new GraphDatabaseAgent(graphName)));
     }
 
     /**
-     * Access the graph db through the given service object. 
+     * Access the graph db through the given service object. Uses the context shared by
+     * everything else serving that db (e.g. all plugin requests).
      * @param graphService
      */
     public GraphBase(GraphDatabaseService graphService) {
-        graphDb = new GraphDatabaseAgent(graphService);
-        initNodeIndexes();
+        this(GraphServiceContext.forDatabase(graphService));
     }
     
     
@@ -90,8 +92,7 @@ public abstract class GraphBase {
      * @param embeddedGraph
      */
     public GraphBase(EmbeddedGraphDatabase embeddedGraph) {
-        graphDb = new GraphDatabaseAgent(embeddedGraph);
-        initNodeIndexes();
+        this(new GraphServiceContext(new GraphDatabaseAgent(embeddedGraph)));
     }
     
     
@@ -100,16 +101,33 @@ public abstract class GraphBase {
      * @param gdb
      */
     public GraphBase(GraphDatabaseAgent gdb) {
-        graphDb = gdb;
-        initNodeIndexes();
+        this(new GraphServiceContext(gdb));
     }
     
     
     /**
-     * Just close the db.
+     * Use an existing context, sharing its indexes and caches.
+     * @param context
+     */
+    public GraphBase(GraphServiceContext context) {
+        this.context = context;
+        graphDb = context.getGraphDatabaseAgent();
+        graphNodeIndex = context.graphNodeIndex;
+        graphTaxUIDNodeIndex = context.graphTaxUIDNodeIndex;
+        graphOTTNodeIDIndex = context.graphOTTNodeIDIndex;
+        sourceMapIndex = context.sourceMapIndex;
+        synthMetaIndex = context.synthMetaIndex;
+        synthRelIndex = context.synthRelIndex;
+    }
+    
+    
+    /**
+     * Just close the db. Does nothing for a shared context (plugins), whose db belongs to the server.
      */
     public void shutdownDB() {
-        graphDb.shutdownDb();
+        if (!context.isShared()) {
+            graphDb.shutdownDb();
+        }
     }
     
     
@@ -120,7 +138,7 @@ public abstract class GraphBase {
      * @throws MultipleHitsException, TaxonNotFoundException
      */
     public Node findGraphTaxNodeByUID(final String taxUID) throws MultipleHitsException, TaxonNotFoundException {
-        IndexHits<Node> hits = GraphBase.graphTaxUIDNodeIndex.get(NodeProperty.TAX_UID.propertyName, taxUID);
+        IndexHits<Node> hits = graphTaxUIDNodeIndex.get(NodeProperty.TAX_UID.propertyName, taxUID);
         Node firstNode = null;
         try {
             firstNode = hits.getSingle();
@@ -143,7 +161,7 @@ public abstract class GraphBase {
      * @throws MultipleHitsException, TaxonNotFoundException
      */
     public Node findTaxNodeByName(final String name) throws TaxonNotFoundException, MultipleHitsException {
-        IndexHits<Node> hits = GraphBase.graphNodeIndex.get(NodeProperty.NAME.propertyName, name);
+        IndexHits<Node> hits = graphNodeIndex.get(NodeProperty.NAME.propertyName, name);
         Node firstNode = null;
         try {
             firstNode = hits.getSingle();
@@ -170,7 +188,7 @@ public abstract class GraphBase {
      * @throws TaxonNotFoundException
      */
     public Node findGraphNodeByOTTNodeID(final String ottNodeID) throws MultipleHitsException, TaxonNotFoundException {
-        IndexHits<Node> hits = GraphBase.graphOTTNodeIDIndex.get(NodeProperty.OT_NODE_ID.propertyName, ottNodeID);
+        IndexHits<Node> hits = graphOTTNodeIDIndex.get(NodeProperty.OT_NODE_ID.propertyName, ottNodeID);
         Node firstNode = null;
         try {
             firstNode = hits.getSingle();
@@ -425,25 +443,4 @@ public abstract class GraphBase {
         }
     }
     */
-    /**
-     * Just initialize the standard GoL indexes used for searching.
-     */
-    private void initNodeIndexes() {
-        // TODO: should move this to an enum to make management/index access easier to deal with
-        graphNodeIndex = graphDb.getNodeIndex("graphNamedNodes", "type", "exact", "to_lower_case", "true");
-        //synNodeIndex = graphDb.getNodeIndex("graphNamedNodesSyns", "type", "exact", "to_lower_case", "true");
-        //sourceRelIndex = graphDb.getRelationshipIndex("sourceRels", "type", "exact", "to_lower_case", "true");
-        //sourceRootIndex = graphDb.getNodeIndex("sourceRootNodes", "type", "exact", "to_lower_case", "true");
-        //sourceMetaIndex = graphDb.getNodeIndex("sourceMetaNodes", "type", "exact", "to_lower_case", "true");
-        graphTaxUIDNodeIndex = graphDb.getNodeIndex("graphTaxUIDNodes", "type", "exact", "to_lower_case", "true");
-        //synTaxUIDNodeIndex = graphDb.getNodeIndex("graphNamedNodesSyns", "type", "exact", "to_lower_case", "true"); // same name as 'synNodeIndex'
-        
-        graphOTTNodeIDIndex = graphDb.getNodeIndex("graphOTTNodeIDNodes", "type", "exact", "to_lower_case", "true");
-        
-        sourceMapIndex = graphDb.getNodeIndex("sourceMapNodes", "type", "exact", "to_lower_case", "true");
-        
-        // synthetic tree indices
-        synthMetaIndex = graphDb.getNodeIndex("synthMetaNodes", "type", "exact", "to_lower_case", "true");
-        synthRelIndex = graphDb.getRelationshipIndex("synthRels", "type", "exact", "to_lower_case", "true");
-    }
 }
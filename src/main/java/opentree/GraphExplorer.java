@@ -1,28 +1,27 @@
 package opentree;
 
+import gnu.trove.list.array.TIntArrayList;
 import jade.tree.deprecated.JadeNode;
 import jade.tree.deprecated.JadeTree;
 import org.opentree.utils.GeneralUtils;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import opentree.constants.NodeProperty;
+import opentree.constants.RelProperty;
 import opentree.constants.RelType;
 import org.opentree.exceptions.TaxonNotFoundException;
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
-import org.neo4j.graphdb.Path;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.index.IndexHits;
-import org.neo4j.graphdb.traversal.Evaluators;
-import org.neo4j.graphdb.traversal.TraversalDescription;
-import org.neo4j.kernel.Traversal;
 
 public class GraphExplorer extends GraphBase {
     
@@ -52,12 +51,17 @@ public class GraphExplorer extends GraphBase {
         finishInitialization();
     }
     
-    // used in plugins
+    // used in plugins. explorers are cheap; the indexes and caches are in the db's shared context
     public GraphExplorer(GraphDatabaseService gdb) {
         super(gdb);
         finishInitialization();
     }
     
+    public GraphExplorer(GraphServiceContext context) {
+        super(context);
+        finishInitialization();
+    }
+    
     /*
     public GraphExplorer(GraphDatabaseAgent gdb) {
         super(gdb);
@@ -92,25 +96,14 @@ public class GraphExplorer extends GraphBase {
     
     
     // synth tree ids are returned sorted, so assumes a certain numbering scheme
+    // memoized in the context's SynthTreeRegistry; refreshed when a tree is ingested
     public ArrayList<String> getSynthTreeIDs () {
-        HashSet<String> trees = new HashSet<>();
-        IndexHits<Node> hits  = synthMetaIndex.query("name", "*");
-        for (Node hit : hits) {
-            if (hit.hasProperty("tree_id")) {
-                trees.add((String) hit.getProperty("tree_id"));
-            }
-        }
-        hits.close();
-        ArrayList<String> synthTreeList = new ArrayList<>(trees);
-        Collections.sort(synthTreeList);
-        return (synthTreeList);
+        return context.getRegistry().getTreeIDs();
     }
     
     
     public String getMostRecentSynthTreeID () {
-        ArrayList<String> allTrees = getSynthTreeIDs();
-        String tree = allTrees.get((allTrees.size() - 1));
-        return tree;
+        return context.getRegistry().getMostRecentTreeID();
     }
     
     
@@ -119,8 +112,12 @@ public class GraphExplorer extends GraphBase {
      * @return metadata Node for queried synthetic tree id
      */
     public Node getSynthesisMetaNodeByName (String synthTreeName) {
+        Node metaDataNode = context.getRegistry().getMetaNode(synthTreeName);
+        if (metaDataNode != null) {
+            return metaDataNode;
+        }
+        // not an exact tree id; the index is case-insensitive
         IndexHits<Node> hits = synthMetaIndex.query("name", synthTreeName);
-        Node metaDataNode = null;
         if (hits.hasNext()) {
             metaDataNode = hits.next();
         }
@@ -134,13 +131,42 @@ public class GraphExplorer extends GraphBase {
      * @return sourceMapNode Node for queried synthetic tree id
      */
     public Node getSourceMapNodeByName (String synthTreeName) {
-        IndexHits<Node> hits = sourceMapIndex.query("name", synthTreeName);
-        Node sourceMapNode = null;
-        if (hits.hasNext()) {
-            sourceMapNode = hits.next();
-        }
-        hits.close();
-        return sourceMapNode;
+        return context.getRegistry().getSourceMapNode(synthTreeName);
+    }
+    
+    
+    /**
+     * @param synthTreeName is the synthetic tree 'tree_id' identifier
+     * @return the root Node of the queried synthetic tree (the metadata node points to it)
+     */
+    public Node getSynthTreeRootNode (String synthTreeName) {
+        Node meta = getSynthesisMetaNodeByName(synthTreeName);
+        return meta.getSingleRelationship(RelType.SYNTHMETADATAFOR, Direction.OUTGOING).getEndNode();
+    }
+    
+    
+    /**
+     * @param treeID the synthetic tree identifier
+     * @return the in-memory topology of the synthetic tree; built from the graph on first use
+     * @throws IllegalArgumentException if there is no such synthetic tree
+     */
+    public SynthTreeIndex getSynthTreeIndex (String treeID) {
+        return context.getSynthTreeIndex(treeID);
+    }
+    
+    
+    /**
+     * @param treeID the synthetic tree identifier
+     * @return in-memory ott id / node id lookup for the synthetic tree; built on first use
+     */
+    public SynthTreeIdResolver getIdResolver (String treeID) {
+        return context.getIdResolver(treeID);
+    }
+    
+    
+    // graph node for a dense synth tree index id
+    public Node getGraphNode (SynthTreeIndex index, int id) {
+        return graphDb.getNodeById(index.getGraphNodeID(id));
     }
     
     
@@ -155,12 +181,21 @@ public class GraphExplorer extends GraphBase {
     
     
     /**
-     * is the node in the specified synthetic tree? only used for multi-tree dbs
+     * is the node in the specified synthetic tree? constant time, from the tree's in-memory index or
+     * membership bitset
      * @param nd the graph node of interest
      * @param treeID the synthetic tree identifier e.g. "opentree4.1"
      * @return inTree whether node is in specified synthetic tree
      */
     public boolean nodeIsInSyntheticTree (Node nd, String treeID) {
+        SynthTreeIndex index = context.getLoadedSynthTreeIndex(treeID);
+        if (index != null) {
+            return index.contains(nd);
+        }
+        SynthTreeMembership membership = context.getMembership(treeID);
+        if (membership != null) {
+            return membership.contains(nd);
+        }
         boolean inTree = false;
         for (Relationship rel : nd.getRelationships(RelType.SYNTHCHILDOF)) {
             if (String.valueOf(rel.getProperty("name")).equals(treeID)) {
@@ -172,6 +207,60 @@ public class GraphExplorer extends GraphBase {
     }
     
     
+    /**
+     * Ancestor test in constant time, using the in-memory index if it is loaded and otherwise the
+     * [preorder, postorder] labels stored at ingest (so no traversal is needed either way).
+     * @param ancestor the putative ancestor
+     * @param descendant the putative descendant
+     * @param treeID the synthetic tree identifier
+     * @return true if ancestor is an ancestor of (or the same node as) descendant in the synthetic tree
+     */
+    public boolean isAncestor (Node ancestor, Node descendant, String treeID) {
+        SynthTreeIndex index = context.getLoadedSynthTreeIndex(treeID);
+        if (index == null) {
+            int[] a = getIntervalLabels(ancestor, treeID);
+            int[] d = getIntervalLabels(descendant, treeID);
+            if (a != null && d != null) {
+                return a[0] <= d[0] && d[1] <= a[1];
+            }
+            // labels missing (tree ingested before they existed) or node not in the tree
+            index = getSynthTreeIndex(treeID);
+        }
+        int a = index.getDenseID(ancestor);
+        int d = index.getDenseID(descendant);
+        if (a == SynthTreeIndex.NO_NODE || d == SynthTreeIndex.NO_NODE) {
+            return false;
+        }
+        return index.isAncestor(a, d);
+    }
+    
+    
+    /**
+     * @param nd a graph node
+     * @param treeID the synthetic tree identifier
+     * @return the stored {preorder, postorder} ranks of nd in the synthetic tree, or null if the
+     *     node is not in the tree or the tree was ingested without labels
+     */
+    public int[] getIntervalLabels (Node nd, String treeID) {
+        for (Relationship rel : nd.getRelationships(RelType.SYNTHCHILDOF, Direction.OUTGOING)) {
+            if (String.valueOf(rel.getProperty("name")).equals(treeID)) {
+                if (!rel.hasProperty(RelProperty.PREORDER.propertyName)) {
+                    return null;
+                }
+                return new int[] {(Integer) rel.getProperty(RelProperty.PREORDER.propertyName),
+                    (Integer) rel.getProperty(RelProperty.POSTORDER.propertyName)};
+            }
+        }
+        // the root has no outgoing rel in its tree; its labels are on the metadata node
+        Node meta = getSynthesisMetaNodeByName(treeID);
+        if (meta != null && meta.hasProperty("root_preorder")
+                && nd.equals(meta.getSingleRelationship(RelType.SYNTHMETADATAFOR, Direction.OUTGOING).getEndNode())) {
+            return new int[] {(Integer) meta.getProperty("root_preorder"), (Integer) meta.getProperty("root_postorder")};
+        }
+        return null;
+    }
+    
+    
     /**
      * return a map of all taxonomic information stored at node
      * @param nd a graph node
@@ -216,33 +305,110 @@ public class GraphExplorer extends GraphBase {
     
     public HashMap<String, Object> getSourceIDMap (HashSet<String> uniqueSources, String treeID) {
         HashMap<String, Object> sourceIDMap = new HashMap<>();
+        SourceDictionary dict = getSourceDictionary(treeID);
         for (String ind : uniqueSources) {
-            HashMap<String, String> formatSource = getSourceMapIndSource(ind, treeID);
+            Map<String, String> formatSource = dict.getRecord(ind);
+            if (formatSource == null) {
+                formatSource = getSourceMapIndSource(ind, treeID);
+            }
             sourceIDMap.put(ind, formatSource);
         }
         return sourceIDMap;
     }
     
     
+    /**
+     * @return the numbered sources of the synthetic tree with their parsed source_id_map records,
+     *     built on first use
+     */
+    public SourceDictionary getSourceDictionary (String treeID) {
+        return context.getSourceDictionary(treeID);
+    }
+    
+    
+    /**
+     * @return the hit/miss counts of the caches shared by the services, for monitoring
+     */
+    public HashMap<String, Object> getCacheMetrics (String treeID) {
+        HashMap<String, Object> res = new HashMap<>();
+        res.put("synth_tree_registry", context.getRegistry().getMetrics());
+        res.put("lineage_cache", context.getLineageCache(treeID).getMetrics());
+        return res;
+    }
+    
+    
     // get lineage back to root of synthetic tree from some internal node
+    // ancestor blobs come from the tree's LineageCache when possible
     public LinkedList<HashMap<String, Object>> getLineage (Node nd, String treeID, HashSet<String> uniqueSources) {
         LinkedList<HashMap<String, Object>> lineage = new LinkedList<>();
+        LineageCache cache = context.getLineageCache(treeID);
         List<Node> nodeList = getPathToRoot(nd, RelType.SYNTHCHILDOF, treeID);
         for (Node cn : nodeList) {
-            HashMap<String, Object> indInfo = getNodeBlob(cn, treeID, uniqueSources);
+            lineage.add(getLineageBlob(cn, treeID, uniqueSources, cache));
+        }
+        return lineage;
+    }
+
+
+    /**
+     * As getLineage, but ancestor blobs already in `blobs` are reused rather than rebuilt, and new
+     * ones are added; lineages of many nodes in one request share their common prefix this way.
+     * Only valid while the same uniqueSources is used (a reused blob does not add its sources again).
+     * @param blobs graph node -> node blob, for the current request
+     */
+    public LinkedList<HashMap<String, Object>> getLineage (Node nd, String treeID, HashSet<String> uniqueSources,
+            HashMap<Node, HashMap<String, Object>> blobs) {
+        LinkedList<HashMap<String, Object>> lineage = new LinkedList<>();
+        LineageCache cache = context.getLineageCache(treeID);
+        List<Node> nodeList = getPathToRoot(nd, RelType.SYNTHCHILDOF, treeID);
+        for (Node cn : nodeList) {
+            HashMap<String, Object> indInfo = blobs.get(cn);
+            if (indInfo == null) {
+                indInfo = getLineageBlob(cn, treeID, uniqueSources, cache);
+                blobs.put(cn, indInfo);
+            }
             lineage.add(indInfo);
         }
         return lineage;
     }
+
+
+    // getNodeBlob through the lineage cache. the returned blob is shared
+    private HashMap<String, Object> getLineageBlob (Node nd, String treeID, HashSet<String> uniqueSources,
+            LineageCache cache) {
+        HashMap<String, Object> blob = cache.get(nd.getId(), uniqueSources);
+        if (blob == null) {
+            HashSet<String> sources = new HashSet<>();
+            blob = getNodeBlob(nd, treeID, sources);
+            cache.put(nd.getId(), blob, sources);
+            uniqueSources.addAll(sources);
+        }
+        return blob;
+    }
+
+
+    /**
+     * @param treeID the synthetic tree identifier
+     * @return per-node tip counts, heights etc. of the synthetic tree, computed on first use
+     */
+    public SubtreeStats getSubtreeStats (String treeID) {
+        return getSynthTreeIndex(treeID).getStats();
+    }
     
     
     /**
-     * if node doesn't have an outgoing synth rel it is a root; num_tips stored in metadata node
+     * from the tree's SubtreeStats; for nodes that are not in the tree the stored value is used
+     * (if node doesn't have an outgoing synth rel it is a root; num_tips stored in metadata node)
      * @param nd a graph node
      * @param treeID the synthetic tree identifier
-     * @return numTips the number of descendant tips in the specified synthetic tree
+     * @return numTips the number of descendant tips in the specified synthetic tree (0 for a tip)
      */
     public Integer getNumTipDescendants (Node nd, String treeID) {
+        SubtreeStats stats = getSubtreeStats(treeID);
+        int id = stats.getIndex().getDenseID(nd);
+        if (id != SynthTreeIndex.NO_NODE) {
+            return stats.getNumTipDescendants(id);
+        }
         Integer numTips = null;
         if (nd.hasRelationship(RelType.SYNTHCHILDOF, Direction.OUTGOING)) {
             for (Relationship rel : nd.getRelationships(RelType.SYNTHCHILDOF, Direction.OUTGOING)) {
@@ -267,9 +433,14 @@ public class GraphExplorer extends GraphBase {
         if (curNode.hasRelationship(RelType.SYNTHCHILDOF, Direction.OUTGOING)) {
             for (Relationship rel : curNode.getRelationships(RelType.SYNTHCHILDOF, Direction.OUTGOING)) {
                 if (String.valueOf(rel.getProperty("name")).equals(treeID)) {
-                    // loop over properties
+                    EdgeAnnotations annotations = getEdgeAnnotations(rel, treeID);
+                    for (String key : annotations.keys()) {
+                        results.put(key, annotations.get(key));
+                    }
+                    // any other (untyped) string properties
                     for (String key : rel.getPropertyKeys()) {
-                        if (!"name".equals(key) && !"tip_descendants".equals(key)) {
+                        if (!"name".equals(key) && !"tip_descendants".equals(key) && !annotations.has(key)
+                                && rel.getProperty(key) instanceof String) {
                             HashMap<String, String> mapProp = stringToMap((String) rel.getProperty(key));
                             results.put(key, mapProp);
                         }
@@ -280,6 +451,14 @@ public class GraphExplorer extends GraphBase {
         return results;
     }
     
+    
+    /**
+     * @return the decoded (and cached) support/conflict annotations of a SYNTHCHILDOF rel of treeID
+     */
+    public EdgeAnnotations getEdgeAnnotations (Relationship rel, String treeID) {
+        return context.getEdgeAnnotations(rel, treeID);
+    }
+    
     private static final Set<String> releasedFields = new HashSet<String>();
     static {
         for (String f :
@@ -303,26 +482,13 @@ public class GraphExplorer extends GraphBase {
         if (curNode.hasRelationship(RelType.SYNTHCHILDOF, Direction.OUTGOING)) {
             for (Relationship rel : curNode.getRelationships(RelType.SYNTHCHILDOF, Direction.OUTGOING)) {
                 if (String.valueOf(rel.getProperty("name")).equals(treeID)) {
-                    // loop over properties
-                    for (String key : rel.getPropertyKeys()) {
+                    EdgeAnnotations annotations = getEdgeAnnotations(rel, treeID);
+                    for (String key : annotations.keys()) {
                         if (releasedFields.contains(key)) {
-                            
-                            // note: conflicts_with is the only non-key-value pair (instead is an array)
-                            // add other properties here if needed ('resolves'?)
-                            
-                            if ("conflicts_with".equals(key) || "resolved_by".equals(key)) {
-                                HashMap <String, ArrayList<String>> arrayProp = stringToMapArray((String) rel.getProperty(key));
-                                results.put(key, arrayProp);
-                                for (String i : arrayProp.keySet()) {
-                                    uniqueSources.add(i);
-                                }
-                            } else {
-                                HashMap<String, String> mapProp = stringToMap((String) rel.getProperty(key));
-                                results.put(key, mapProp);
-                                for (String i : mapProp.keySet()) {
-                                    uniqueSources.add(i);
-                                }
-                            } 
+                            // values are source -> node id, except conflicts_with and resolved_by
+                            // which are source -> [node ids]
+                            results.put(key, annotations.get(key));
+                            uniqueSources.addAll(annotations.getSources(key));
                         }
                     }
                 }
@@ -345,8 +511,10 @@ public class GraphExplorer extends GraphBase {
         JadeTree tree = reconstructDepthLimitedSubtree(treeID, startNode, maxDepth, "id");
         JadeNode root = tree.getRoot();
         // root.assocObject("graph_node", startNode);
-        results = processArgusonTree(root, treeID, uniqueSources);
-        LinkedList<HashMap<String, Object>> lineage = getLineageArguson(startNode, treeID, uniqueSources);
+        // representative names of the unnamed nodes, shared by the whole request so that each is found once
+        HashMap<Node, ArrayList<String>> names = new HashMap<>();
+        results = processArgusonTree(root, treeID, uniqueSources, names);
+        LinkedList<HashMap<String, Object>> lineage = getLineageArguson(startNode, treeID, uniqueSources, names);
         results.put("lineage", lineage);
         HashMap<String, Object> sourceMap = getSourceIDMap(uniqueSources, treeID);
         results.put("source_id_map", sourceMap);
@@ -364,13 +532,18 @@ public class GraphExplorer extends GraphBase {
     }
 
     public void getSupportingStudies(JadeNode inNode, String treeID, Set<String> studies) {
-        Node gNode = (Node) inNode.getObject("graph_node"); // neo4j node
-        if (gNode == null)
-            throw new RuntimeException("no graph_node for jade node");
-        getSupportingStudies(gNode, treeID, studies);       // find study ids
-        int count = inNode.getChildCount();
-        for (int i = 0; i < count; ++i)
-            getSupportingStudies(inNode.getChild(i), treeID, studies);
+        ArrayList<JadeNode> stack = new ArrayList<>();
+        stack.add(inNode);
+        while (!stack.isEmpty()) {
+            JadeNode curNode = stack.remove(stack.size() - 1);
+            Node gNode = (Node) curNode.getGraphNode(); // neo4j node
+            if (gNode == null)
+                throw new RuntimeException("no graph_node for jade node");
+            getSupportingStudies(gNode, treeID, studies);       // find study ids
+            int count = curNode.getChildCount();
+            for (int i = 0; i < count; ++i)
+                stack.add(curNode.getChild(i));
+        }
     }
 
     // Get study ids for all supported_by annotations for this node
@@ -379,19 +552,12 @@ public class GraphExplorer extends GraphBase {
         if (curNode.hasRelationship(RelType.SYNTHCHILDOF, Direction.OUTGOING)) {
             for (Relationship rel : curNode.getRelationships(RelType.SYNTHCHILDOF, Direction.OUTGOING)) {
                 if (String.valueOf(rel.getProperty("name")).equals(treeID)) {
-                    // crude to use getPropertyKeys() here, but I don't want to learn what the correct method is!
-                    for (String key : rel.getPropertyKeys()) {
-                        if (key.equals("supported_by")) {
-                            HashMap<String, String> mapProp = stringToMap((String) rel.getProperty(key));
-                            // maps "studyid@treeid" to "nodeid"
-                            for (String source : mapProp.keySet()) {
-                                HashMap<String, String> res =
-                                    stringToMap((String) getSourceMapNodeByName(treeID).getProperty(source));
-                                String id = res.get("study_id");
-                                if (id != null && !id.equals("null"))  // don't know what this is about
-                                    studies.add(id);
-                            }
-                        }
+                    // maps "studyid@treeid" to "nodeid"
+                    SourceDictionary dict = getSourceDictionary(treeID);
+                    for (String source : getEdgeAnnotations(rel, treeID).getSources("supported_by")) {
+                        String id = dict.getStudyID(source); // null for e.g. the taxonomy
+                        if (id != null)
+                            studies.add(id);
                     }
                 }
             }
@@ -401,10 +567,16 @@ public class GraphExplorer extends GraphBase {
 
     // like getLineage above, but need extra stuff for arguson
     public LinkedList<HashMap<String, Object>> getLineageArguson (Node nd, String treeID, HashSet<String> uniqueSources) {
+        return getLineageArguson(nd, treeID, uniqueSources, new HashMap<Node, ArrayList<String>>());
+    }
+    
+    
+    private LinkedList<HashMap<String, Object>> getLineageArguson (Node nd, String treeID, HashSet<String> uniqueSources,
+            HashMap<Node, ArrayList<String>> names) {
         LinkedList<HashMap<String, Object>> lineage = new LinkedList<>();
         List<Node> nodeList = getPathToRoot(nd, RelType.SYNTHCHILDOF, treeID);
         for (Node cn : nodeList) {
-            HashMap<String, Object> indInfo = getNodeBlobArguson(cn, treeID, uniqueSources);
+            HashMap<String, Object> indInfo = getNodeBlobArguson(cn, treeID, uniqueSources, names);
             lineage.add(indInfo);
         }
         return lineage;
@@ -413,12 +585,18 @@ public class GraphExplorer extends GraphBase {
     
     // like getNodeBlob above, except non-taxon nodes receive a label
     public HashMap<String, Object> getNodeBlobArguson (Node nd, String treeID, HashSet<String> uniqueSources) {
+        return getNodeBlobArguson(nd, treeID, uniqueSources, new HashMap<Node, ArrayList<String>>());
+    }
+    
+    
+    private HashMap<String, Object> getNodeBlobArguson (Node nd, String treeID, HashSet<String> uniqueSources,
+            HashMap<Node, ArrayList<String>> names) {
         HashMap<String, Object> results = new HashMap<>();
         results.put("node_id", nd.getProperty("ot_node_id"));
         if (nd.hasProperty("name")) {
             results.put("taxon", getTaxonBlob(nd));
         } else {
-            ArrayList<String> subNameList = getNamesOfRepresentativeDescendants(nd, RelType.SYNTHCHILDOF, treeID);
+            ArrayList<String> subNameList = getNamesOfRepresentativeDescendants(nd, RelType.SYNTHCHILDOF, treeID, names);
             results.put("descendant_name_list", subNameList);
         }
         results.put("num_tips", getNumTipDescendants(nd, treeID));
@@ -429,27 +607,107 @@ public class GraphExplorer extends GraphBase {
     }
     
     
-    // recursive traversal
+    // preorder traversal with an explicit stack, as trees can be deeper than the call stack
     // each jade node has an associated graph node property
-    private HashMap<String, Object> processArgusonTree (JadeNode inNode, String treeID, HashSet<String> uniqueSources) {
-        HashMap<String, Object> res = new HashMap<>();
-        Node gNode = (Node) inNode.getObject("graph_node");
-        HashMap<String, Object> nodeBlob = getNodeBlobArguson(gNode, treeID, uniqueSources);
-        res.putAll(nodeBlob);
-        ArrayList<Object> children = new ArrayList<>();
-        for (int i = 0; i < inNode.getChildCount(); i++) {
-            children.add(processArgusonTree(inNode.getChild(i), treeID, uniqueSources));
-        }
-        if (children.size() > 0) {
-            res.put("children", children);
+    private HashMap<String, Object> processArgusonTree (JadeNode inNode, String treeID, HashSet<String> uniqueSources,
+            HashMap<Node, ArrayList<String>> names) {
+        HashMap<String, Object> root = new HashMap<>();
+        ArrayList<JadeNode> stack = new ArrayList<>();
+        ArrayList<HashMap<String, Object>> results = new ArrayList<>(); // the (empty) map to fill for each node on the stack
+        stack.add(inNode);
+        results.add(root);
+        while (!stack.isEmpty()) {
+            int top = stack.size() - 1;
+            JadeNode curNode = stack.remove(top);
+            HashMap<String, Object> res = results.remove(top);
+            Node gNode = (Node) curNode.getGraphNode();
+            HashMap<String, Object> nodeBlob = getNodeBlobArguson(gNode, treeID, uniqueSources, names);
+            res.putAll(nodeBlob);
+            if (curNode.getChildCount() > 0) {
+                ArrayList<Object> children = new ArrayList<>();
+                for (int i = 0; i < curNode.getChildCount(); i++) {
+                    children.add(new HashMap<String, Object>());
+                }
+                res.put("children", children);
+                // reversed, so children are visited in order
+                for (int i = curNode.getChildCount() - 1; i >= 0; i--) {
+                    stack.add(curNode.getChild(i));
+                    results.add((HashMap<String, Object>) children.get(i));
+                }
+            }
         }
-        return res;
+        return root;
     }
     
     
     // for arguson: find descendant taxon names for non-taxon nodes
+    // the name of the first and of the last child, or for an unnamed child the first (resp. last) of
+    // its own representative names. explicit stack, as a chain of unnamed nodes can be deeper than the call stack
     public static ArrayList<String> getNamesOfRepresentativeDescendants(Node subtreeRoot, RelType relType, String treeID) {
-        ArrayList<String> toReturn = new ArrayList<>();
+        return getNamesOfRepresentativeDescendants(subtreeRoot, relType, treeID, new HashMap<Node, ArrayList<String>>());
+    }
+    
+    
+    // as above, with the results for the unnamed nodes kept in done (also for the unnamed nodes met
+    // on the way down) and reused, so naming every node of a subtree is linear rather than
+    // quadratic in a chain of unnamed nodes
+    private static ArrayList<String> getNamesOfRepresentativeDescendants(Node subtreeRoot, RelType relType, String treeID,
+            HashMap<Node, ArrayList<String>> done) {
+        ArrayList<String> known = done.get(subtreeRoot);
+        if (known != null) {
+            return known;
+        }
+        HashMap<Node, Node[]> ends = new HashMap<>(); // first and last child of the nodes on the stack
+        ArrayList<Node> stack = new ArrayList<>();
+        stack.add(subtreeRoot);
+        while (!stack.isEmpty()) {
+            Node curNode = stack.get(stack.size() - 1);
+            Node[] fl = ends.get(curNode);
+            if (fl == null) {
+                fl = getFirstAndLastChild(curNode, relType, treeID);
+                ends.put(curNode, fl);
+            }
+            Node firstChild = fl[0];
+            Node lastChild = fl[1];
+            if (firstChild != null && !firstChild.hasProperty("name") && !done.containsKey(firstChild)) {
+                stack.add(firstChild);
+                continue;
+            }
+            if (firstChild != lastChild && !lastChild.hasProperty("name") && !done.containsKey(lastChild)) {
+                stack.add(lastChild);
+                continue;
+            }
+            ArrayList<String> toReturn = new ArrayList<>();
+            if (firstChild != null) {
+                if (firstChild.hasProperty("name")) {
+                    toReturn.add((String) firstChild.getProperty("name"));
+                } else {
+                    ArrayList<String> fc = done.get(firstChild);
+                    if (fc.size() > 0) {
+                        toReturn.add(fc.get(0));
+                    }
+                }
+                if (firstChild != lastChild) {
+                    if (lastChild.hasProperty("name")) {
+                        toReturn.add((String) lastChild.getProperty("name"));
+                    } else {
+                        ArrayList<String> lc = done.get(lastChild);
+                        if (lc.size() > 0) {
+                            toReturn.add(lc.get(lc.size() -1));
+                        }
+                    }
+                }
+            }
+            stack.remove(stack.size() - 1);
+            ends.remove(curNode);
+            done.put(curNode, toReturn);
+        }
+        return done.get(subtreeRoot);
+    }
+    
+    
+    // {first, last} child of the node in the tree (the same node if only one); {null, null} for a tip
+    private static Node[] getFirstAndLastChild (Node subtreeRoot, RelType relType, String treeID) {
         Node firstChild = null;
         Node lastChild = null;
         for (Relationship rel : subtreeRoot.getRelationships(Direction.INCOMING, relType)) {
@@ -466,27 +724,7 @@ public class GraphExplorer extends GraphBase {
                 }
             }
         }
-        if (firstChild != null) {
-            if (firstChild.hasProperty("name")) {
-                toReturn.add((String) firstChild.getProperty("name"));
-            } else {
-                ArrayList<String> fc = getNamesOfRepresentativeDescendants(firstChild, relType, treeID);
-                if (fc.size() > 0) {
-                    toReturn.add(fc.get(0));
-                }
-            }
-            if (firstChild != lastChild) {
-                if (lastChild.hasProperty("name")) {
-                    toReturn.add((String) lastChild.getProperty("name"));
-                } else {
-                    ArrayList<String> lc = getNamesOfRepresentativeDescendants(lastChild, relType, treeID);
-                    if (lc.size() > 0) {
-                        toReturn.add(lc.get(lc.size() -1));
-                    }
-                }
-            }
-        }
-        return toReturn;
+        return new Node[] {firstChild, lastChild};
     }
     
      
@@ -499,33 +737,46 @@ public class GraphExplorer extends GraphBase {
      * @return numTips the number of terminals in the depth-limited subtree
      */
     public Integer getSubtreeNumTips (String treeID, Node rootnode, int maxDepth) {
-        
-        Integer numTips = null;
-        
-        // must be a way to get _just_ the path terminal nodes, but for now this works
-        HashSet<Node> childNodes = new HashSet<>();
-        HashSet<Node> internalNodes = new HashSet<>();
-        
-        TraversalDescription synthEdgeTraversal = Traversal.description().
-            relationships(RelType.SYNTHCHILDOF, Direction.INCOMING);
-        
-        synthEdgeTraversal = synthEdgeTraversal.depthFirst();
-        //synthEdgeTraversal = synthEdgeTraversal.breadthFirst();
-        if (maxDepth >= 0) {
-            synthEdgeTraversal = synthEdgeTraversal.evaluator(Evaluators.toDepth(maxDepth));
-        }
-        for (Path path : synthEdgeTraversal.traverse(rootnode)) {
-            Relationship furthestRel = path.lastRelationship();
-            if (furthestRel != null && furthestRel.hasProperty("name")) {
-                String rn = (String) furthestRel.getProperty("name");
-                if (rn.equals(treeID)) {
-                    childNodes.add(furthestRel.getStartNode());
-                    internalNodes.add(furthestRel.getEndNode());
+        return getSubtreeNumTips(treeID, rootnode, maxDepth, Integer.MAX_VALUE);
+    }
+    
+    
+    /**
+     * As above, but gives up as soon as the count exceeds `limit`, so a size check costs at most
+     * O(limit) index lookups however large the subtree is. No graph access; a node is a tip of the
+     * depth-limited subtree if it is a tip of the synth tree or sits at exactly maxDepth.
+     * @param limit stop counting past this many tips; Integer.MAX_VALUE for no limit
+     * @return numTips the number of terminals in the depth-limited subtree, or limit + 1 if there are more than limit
+     */
+    public int getSubtreeNumTips (String treeID, Node rootnode, int maxDepth, int limit) {
+        SynthTreeIndex index = getSynthTreeIndex(treeID);
+        int rootID = index.getDenseID(rootnode);
+        if (rootID == SynthTreeIndex.NO_NODE) {
+            return 0;
+        }
+        SubtreeStats stats = index.getStats();
+        if (maxDepth < 0 || maxDepth >= stats.getHeight(rootID)) {
+            // the depth limit cuts nothing off
+            int numTips = stats.getNumTips(rootID);
+            // not Math.min(numTips, limit + 1), which overflows for the unlimited Integer.MAX_VALUE
+            return numTips > limit ? limit + 1 : numTips;
+        }
+        int maxAbsDepth = index.getDepth(rootID) + maxDepth;
+        int numTips = 0;
+        TIntArrayList stack = new TIntArrayList();
+        stack.add(rootID);
+        while (!stack.isEmpty()) {
+            int curID = stack.removeAt(stack.size() - 1);
+            if (index.isTip(curID) || index.getDepth(curID) >= maxAbsDepth) {
+                if (++numTips > limit) {
+                    break;
                 }
+                continue;
+            }
+            for (int i = index.getChildCount(curID) - 1; i >= 0; i--) {
+                stack.add(index.getChild(curID, i));
             }
         }
-        childNodes.removeAll(internalNodes);
-        numTips = childNodes.size();
         return numTips;
     }
     
@@ -541,42 +792,131 @@ public class GraphExplorer extends GraphBase {
     }
 
     public JadeTree reconstructDepthLimitedSubtree (String treeID, Node rootnode, int maxDepth, String labelFormat, boolean idsForUnnamed) {
+        SynthTreeIndex index = getSynthTreeIndex(treeID);
         JadeNode root = new JadeNode();
         root.setName(getNodeLabel(rootnode, labelFormat, idsForUnnamed));
-        HashMap<Node, JadeNode> node2JadeNode = new HashMap<>();
-        node2JadeNode.put(rootnode, root);
-        TraversalDescription synthEdgeTraversal = Traversal.description().
-            relationships(RelType.SYNTHCHILDOF, Direction.INCOMING);
-        
-        synthEdgeTraversal = synthEdgeTraversal.depthFirst();
-        if (maxDepth >= 0) {
-            synthEdgeTraversal = synthEdgeTraversal.evaluator(Evaluators.toDepth(maxDepth));
+        root.setGraphNode(rootnode); // JAR
+        int rootID = index.getDenseID(rootnode);
+        if (rootID == SynthTreeIndex.NO_NODE) {
+            return new JadeTree(root);
         }
+        int maxAbsDepth = maxDepth >= 0 ? index.getDepth(rootID) + maxDepth : Integer.MAX_VALUE;
         
-        for (Path path : synthEdgeTraversal.traverse(rootnode)) {
-            Relationship furshestRel = path.lastRelationship();
-            if (furshestRel != null && furshestRel.hasProperty("name")) {
-                String rn = (String) furshestRel.getProperty("name");
-                if (rn.equals(treeID)) {
-                    Node parNode = furshestRel.getEndNode();
-                    Node childNode = furshestRel.getStartNode();
-                    JadeNode jChild = new JadeNode();
-                    jChild.setName(getNodeLabel(childNode, labelFormat, idsForUnnamed));
-                    jChild.assocObject("graph_node", childNode);
-                    node2JadeNode.get(parNode).addChild(jChild);
-                    node2JadeNode.put(childNode, jChild);
-                }
+        // preorder walk over the dense ids; children come out in the same order as the old traversal
+        ArrayList<JadeNode> jadeStack = new ArrayList<>();
+        TIntArrayList idStack = new TIntArrayList();
+        jadeStack.add(root);
+        idStack.add(rootID);
+        while (!idStack.isEmpty()) {
+            int top = idStack.size() - 1;
+            int curID = idStack.removeAt(top);
+            JadeNode curJadeNode = jadeStack.remove(top);
+            if (index.getDepth(curID) >= maxAbsDepth) {
+                continue;
+            }
+            int nChildren = index.getChildCount(curID);
+            JadeNode[] jChildren = new JadeNode[nChildren];
+            for (int i = 0; i < nChildren; i++) {
+                Node childNode = getGraphNode(index, index.getChild(curID, i));
+                JadeNode jChild = new JadeNode();
+                jChild.setName(getNodeLabel(childNode, labelFormat, idsForUnnamed));
+                jChild.setGraphNode(childNode);
+                curJadeNode.addChild(jChild);
+                jChildren[i] = jChild;
+            }
+            for (int i = nChildren - 1; i >= 0; i--) {
+                jadeStack.add(jChildren[i]);
+                idStack.add(index.getChild(curID, i));
             }
         }
-        root.assocObject("graph_node", rootnode); // JAR
         JadeTree tree = new JadeTree(root);
         return tree;
     }
     
     
+    /**
+     * Write the depth-limited subtree as newick (with the trailing ';') straight from the synth
+     * tree index, without building a JadeTree. Output is identical to
+     * reconstructDepthLimitedSubtree(...).getRoot().getNewick(false) + ";". Iterative, and every
+     * label is appended exactly once, so cost is linear in the size of the output.
+     * @param treeID the synthetic tree identifier
+     * @param rootnode the graph node that acts as the root of the subtree
+     * @param maxDepth the maximum depth of the tree; negative for no limit
+     * @param labelFormat valid label formats are: `name`, `id`, or `name_and_id`
+     * @param idsForUnnamed whether to label unnamed nodes with their node id
+     * @param out where the newick is written
+     * @param studies if not null, collects the supporting study ids of all written nodes
+     */
+    public void writeDepthLimitedSubtreeNewick (String treeID, Node rootnode, int maxDepth, String labelFormat,
+        boolean idsForUnnamed, Appendable out, Set<String> studies) throws IOException {
+        
+        SynthTreeIndex index = getSynthTreeIndex(treeID);
+        int rootID = index.getDenseID(rootnode);
+        if (rootID == SynthTreeIndex.NO_NODE) {
+            if (studies != null) {
+                getSupportingStudies(rootnode, treeID, studies);
+            }
+            out.append(getNodeLabel(rootnode, labelFormat, idsForUnnamed)).append(';');
+            return;
+        }
+        int maxAbsDepth = maxDepth >= 0 ? index.getDepth(rootID) + maxDepth : Integer.MAX_VALUE;
+        
+        // open nodes and the index of the next child to write for each
+        TIntArrayList idStack = new TIntArrayList();
+        TIntArrayList nextChild = new TIntArrayList();
+        int curID = rootID;
+        while (true) {
+            // descend: open curID, or write it as a leaf if it is not expanded
+            if (index.isTip(curID) || index.getDepth(curID) >= maxAbsDepth) {
+                writeNewickLabel(index, curID, treeID, labelFormat, idsForUnnamed, out, studies);
+            } else {
+                out.append('(');
+                idStack.add(curID);
+                nextChild.add(0);
+            }
+            // ascend: close finished nodes until one has a child left to write
+            curID = SynthTreeIndex.NO_NODE;
+            while (!idStack.isEmpty()) {
+                int top = idStack.size() - 1;
+                int parentID = idStack.get(top);
+                int i = nextChild.get(top);
+                if (i < index.getChildCount(parentID)) {
+                    if (i > 0) {
+                        out.append(',');
+                    }
+                    nextChild.set(top, i + 1);
+                    curID = index.getChild(parentID, i);
+                    break;
+                }
+                out.append(')');
+                writeNewickLabel(index, parentID, treeID, labelFormat, idsForUnnamed, out, studies);
+                idStack.removeAt(top);
+                nextChild.removeAt(top);
+            }
+            if (curID == SynthTreeIndex.NO_NODE) {
+                break;
+            }
+        }
+        out.append(';');
+    }
+    
+    
+    private void writeNewickLabel (SynthTreeIndex index, int id, String treeID, String labelFormat,
+        boolean idsForUnnamed, Appendable out, Set<String> studies) throws IOException {
+        Node curNode = getGraphNode(index, id);
+        out.append(getNodeLabel(curNode, labelFormat, idsForUnnamed));
+        if (studies != null) {
+            getSupportingStudies(curNode, treeID, studies);
+        }
+    }
+    
+    
     // basically parse the source string into components
-    public HashMap<String, String> getSourceMapIndSource (String source, String treeID) {
-        HashMap<String, String> res = stringToMap((String) getSourceMapNodeByName(treeID).getProperty(source));
+    public Map<String, String> getSourceMapIndSource (String source, String treeID) {
+        Map<String, String> res = getSourceDictionary(treeID).getRecord(source);
+        if (res == null) { // not in the source map; fails the same way as before
+            res = stringToMap((String) getSourceMapNodeByName(treeID).getProperty(source));
+        }
         return res;
     }
     
@@ -584,83 +924,43 @@ public class GraphExplorer extends GraphBase {
     // conflicts_with is weird, not key-value pair but array
     // pg_2594@tree6014:node1021750,node1021751,node1021752,node1021753,node1021754&pg_1337@tree6167:node1053387
     public HashMap<String, ArrayList<String>> stringToMapArray (String source) {
-        HashMap<String, ArrayList<String>> res = new HashMap<>();
-        String [] props = source.split("&");
-        for (String s : props) {
-            String[] indsrc = s.split(":");
-            String srcname = indsrc[0];
-            String[] nodes = indsrc[1].split(",");
-            ArrayList<String> nodelist = new ArrayList<>(Arrays.asList(nodes));
-            res.put(srcname, nodelist);
-        }
-        return res;
+        return EdgeAnnotations.parseListMap(source);
     }
     
     
     // lots of stuff stored like this bc neo4j cannot have nested properties
+    // format will be: git_sha:c6ce2f9067e9c74ca7b1f770623bde9b6de8bd1f,tree_id:tree1,study_id:ot_157
     public HashMap<String, String> stringToMap (String source) {
-        HashMap<String, String> res = new HashMap<>();
-        // format will be: git_sha:c6ce2f9067e9c74ca7b1f770623bde9b6de8bd1f,tree_id:tree1,study_id:ot_157
-        String [] props = source.split(",");
-        for (String s : props) {
-            String[] indsrc = s.split(":");
-            if (indsrc.length == 2) {
-                res.put(indsrc[0], indsrc[1]);
-            }
-        }
-        return res;
+        return EdgeAnnotations.parseMap(source);
     }
     
     
     // Assumes all query nodes are in the synthetic tree (i.e. should be determined earlier).
-    // Doesn't calculate all paths.
+    // Constant time per node: only the query nodes with the lowest and highest preorder rank matter.
     public Node getDraftTreeMRCA (Iterable<Node> nodeset, String treeID) {
-        Node mrca = null;
-        ArrayList<Node> holder = null;
-        int index = 10000000;
+        SynthTreeIndex index = getSynthTreeIndex(treeID);
+        TIntArrayList ids = new TIntArrayList();
         for (Node curNode : nodeset) {
-            if (holder != null) {
-                for (Node m : Traversal.description().expand(new DraftTreePathExpander(Direction.OUTGOING, treeID))
-                        .traverse(curNode).nodes()) {
-                    int foo = holder.indexOf(m);
-                    if (foo != -1) { // first match. 
-                        if (foo < index) {
-                            index = foo; // if hit is more rootward than previous hit, record that.
-                        }
-                        break; // subsequent matches are not informative. bail.
-                    }
-                }
-            } else { // first pass. get full path to root. ideally we would get the shortest path...
-                ArrayList<Node> graphPathToRoot = new ArrayList<>();
-                for (Node m : Traversal.description().expand(new DraftTreePathExpander(Direction.OUTGOING, treeID))
-                        .traverse(curNode).nodes()) {
-                    graphPathToRoot.add(0, m);
-                }
-                holder = graphPathToRoot;
-            }
+            ids.add(index.getDenseID(curNode));
         }
-        if (!holder.isEmpty()) {
-            if (index == 10000000) { // only a single node passed in, but it *is* in the synthetic tree
-                mrca = holder.get(holder.size() - 1);
-            } else {
-                mrca = holder.get(index);
-            }
+        int mrca = index.getLCA().mrca(ids.toArray());
+        if (mrca == SynthTreeIndex.NO_NODE) {
+            return null;
         }
-        return mrca;
+        return getGraphNode(index, mrca);
     }
     
     
     // find closest (rootward) ancestral taxon
     public Node getDraftTreeMRTA (Node startNode, String treeID) {
-        Node mrta = null;
-        for (Node m : Traversal.description().expand(new DraftTreePathExpander(Direction.OUTGOING, treeID))
-                .traverse(startNode).nodes()) {
-            if (m.hasProperty(NodeProperty.TAX_UID.propertyName)) {
-                mrta = m;
-                break;
+        SynthTreeIndex index = getSynthTreeIndex(treeID);
+        for (int m = index.getDenseID(startNode); m != SynthTreeIndex.NO_NODE; m = index.getParent(m)) {
+            Node curNode = getGraphNode(index, m);
+            if (curNode.hasProperty(NodeProperty.TAX_UID.propertyName)) {
+                return curNode;
             }
         }
-        return mrta;
+        return null;
     }
     
     
@@ -707,81 +1007,47 @@ public class GraphExplorer extends GraphBase {
             throw new UnsupportedOperationException("Cannot extract a tree with < 2 tips.");
         }
         
-        HashMap<Node, ArrayList<Node>> treeTipRootPathMap = new HashMap<>();
-        Node mrca = getDraftTreeMRCA(nodeset, treeID);
-        
-        // only want nodes along the path that are mrcas of the query
-        HashSet<Node> uniqueMRCAs = new HashSet<>();
-        
-        // populate the tip hash with the paths to the root of the tree
-        for (Node curTip : nodeset) { 
-            // queries (mostly terminals, probably) all need to retained, obviously
-            uniqueMRCAs.add(curTip);
-            ArrayList<Node> graphPathToRoot = new ArrayList<>();
-            for (Node m : Traversal.description().expand(new DraftTreePathExpander(Direction.OUTGOING, treeID))
-                    .traverse(curTip).nodes()) {
-                // stop recording paths at the stop node (allows us to specify an mrca beyond which we don't go)
-                if (mrca != null && m.equals(mrca)) {
-                    graphPathToRoot.add(m); // want to record mrca node
-                    break;
-                }
-                graphPathToRoot.add(m); // don't want it reversed as in previous function
-            }
-            if (graphPathToRoot.size() < 1) { // probably not possible (nodes have to be in tree, at least 2)
+        SynthTreeIndex index = getSynthTreeIndex(treeID);
+        int[] ids = new int[nodeset.size()];
+        for (int i = 0; i < ids.length; i++) {
+            Node curTip = nodeset.get(i);
+            ids[i] = index.getDenseID(curTip);
+            if (ids[i] == SynthTreeIndex.NO_NODE) { // probably not possible (nodes have to be in tree)
                 String ret = "The node " + curTip + " does not seem to be in the draft tree.";
                 ret += "; `node_id` is: " + curTip.getProperty("ot_node_id");
                 throw new UnsupportedOperationException(ret);
             }
-            // collect pairwise mrcas here instead of looping again
-            if (!treeTipRootPathMap.isEmpty()) {
-                for (Node n : treeTipRootPathMap.keySet()) {
-                    ArrayList<Node> existingNodes = treeTipRootPathMap.get(n);
-                    for (int i = 0; i < graphPathToRoot.size(); i++) { // only record first match
-                        if (existingNodes.contains(graphPathToRoot.get(i))) {
-                            uniqueMRCAs.add(graphPathToRoot.get(i));
-                            break;
-                        }
-                    }
-                }
-            }
-            treeTipRootPathMap.put(curTip, graphPathToRoot);
         }
+        return getInducedSubtree(ids, treeID, labelFormat, idsForUnnamed);
+    }
+    
+    
+    /**
+     * As above, for tips given as dense ids of the tree's SynthTreeIndex (e.g. from its
+     * SynthTreeIdResolver), so no graph lookups are needed for them.
+     */
+    public JadeTree getInducedSubtree (int[] ids, String treeID, String labelFormat, boolean idsForUnnamed) {
         
-        // remove from each path any node not in the mrca set
-        for (ArrayList<Node> value : treeTipRootPathMap.values()) {
-            value.retainAll(uniqueMRCAs);
+        if (ids.length < 2) {
+            throw new UnsupportedOperationException("Cannot extract a tree with < 2 tips.");
         }
         
-        HashMap<Node, JadeNode> graphNodeTreeNodeMap = new HashMap<>();
-        HashSet<Node> addedNodes = new HashSet<>();
-        
-        JadeNode root = new JadeNode(); // add names, etc.
-        root.assocObject("graph_node", mrca);
+        SynthTreeIndex index = getSynthTreeIndex(treeID);
         
-        root.setName(getNodeLabel(mrca, labelFormat, idsForUnnamed));
-        addedNodes.add(mrca); // collect processed graph nodes
-        graphNodeTreeNodeMap.put(mrca, root);
-        
-        // build the root
-        for (ArrayList<Node> futureTreeNodes : treeTipRootPathMap.values()) {
-            Node curGraphParent = mrca;
-            Collections.reverse(futureTreeNodes); // ack. do want it in the other order. fix later
-            for (int i = 0; i < futureTreeNodes.size(); i++) {
-                Node workingGraphNode = futureTreeNodes.get(i);
-                if (!addedNodes.contains(workingGraphNode)) { // skip existing nodes
-                    JadeNode childTreeNode = new JadeNode();
-                    childTreeNode.assocObject("graph_node", workingGraphNode);
-                    childTreeNode.setName(getNodeLabel(workingGraphNode, labelFormat, idsForUnnamed));
-                    // add child node to current parent
-                    JadeNode parent = graphNodeTreeNodeMap.get(curGraphParent);
-                    parent.addChild(childTreeNode);
-                    addedNodes.add(workingGraphNode);
-                    graphNodeTreeNodeMap.put(workingGraphNode, childTreeNode);
-                }
-                curGraphParent = workingGraphNode;
+        // queries plus the mrcas of preorder-adjacent queries, already in preorder
+        SynthTreeLCA.InducedSubtree induced = index.getLCA().induce(ids);
+        JadeNode[] treeNodes = new JadeNode[induced.nodes.length];
+        for (int i = 0; i < treeNodes.length; i++) {
+            Node workingGraphNode = getGraphNode(index, induced.nodes[i]);
+            JadeNode treeNode = new JadeNode();
+            treeNode.setGraphNode(workingGraphNode);
+            treeNode.setName(getNodeLabel(workingGraphNode, labelFormat, idsForUnnamed));
+            if (induced.parents[i] >= 0) {
+                treeNodes[induced.parents[i]].addChild(treeNode);
             }
+            treeNodes[i] = treeNode;
         }
-        return new JadeTree(root);
+        return new JadeTree(treeNodes[0]);
     }
     
     
@@ -794,6 +1060,16 @@ public class GraphExplorer extends GraphBase {
      */
     public List<Node> getPathToRoot (Node startNode, RelType relType, String nameToFilterBy) {
         ArrayList<Node> path = new ArrayList<>();
+        if (relType == RelType.SYNTHCHILDOF) {
+            SynthTreeIndex index = getSynthTreeIndex(nameToFilterBy);
+            int cur = index.getDenseID(startNode);
+            if (cur != SynthTreeIndex.NO_NODE) {
+                for (cur = index.getParent(cur); cur != SynthTreeIndex.NO_NODE; cur = index.getParent(cur)) {
+                    path.add(getGraphNode(index, cur));
+                }
+                return path;
+            }
+        }
         Node curNode = startNode;
         while (true) {
             Node nextNode = null;
@@ -841,61 +1117,67 @@ public class GraphExplorer extends GraphBase {
      * @return JadeTree
      */
     public JadeTree extractDraftTree (Node startNode, String synthTreeName, String labelFormat) {
-        // empty parameters for initial recursion
         System.out.println("Attempting to extract draft tree name: '" + synthTreeName + "'");
-        JadeNode parentJadeNode = null;
-        Relationship incomingRel = null;
-        return new JadeTree(extractStoredSyntheticTreeRecur(startNode, parentJadeNode, incomingRel, synthTreeName, labelFormat));
+        return new JadeTree(extractStoredSyntheticTree(startNode, synthTreeName, labelFormat));
     }
     
     
     /**
-     * Recursively creates a JadeNode hierarchy containing the tree structure defined by the SYNTHCHILDOF relationships present below a given node,
+     * Creates a JadeNode hierarchy containing the tree structure defined by the SYNTHCHILDOF relationships present below a given node,
      * and returns the root JadeNode. Internal function that requires a Neo4j Node object for the start node.
+     * Preorder with an explicit stack, as trees can be deeper than the call stack.
      */
-    private JadeNode extractStoredSyntheticTreeRecur (Node curGraphNode, JadeNode parentJadeNode,
-        Relationship incomingRel, String synthTreeName, String labelFormat) {
-        
-        JadeNode curNode = new JadeNode();
+    private JadeNode extractStoredSyntheticTree (Node startNode, String synthTreeName, String labelFormat) {
         
-        // set the names for the newick string
-        curNode.setName(getNodeLabel(curGraphNode, labelFormat));
-        curNode.assocObject("nodeID", String.valueOf(curGraphNode.getId()));
-        
-        // add the current node to the tree we're building
-        if (parentJadeNode != null) {
-            boolean done = false;
-            while (!done) {
-                // better way to do this:
-                // for (Node m : Traversal.description().expand(new DraftTreePathExpander(Direction.OUTGOING, treeID)).traverse(curTip).nodes())
-                for (Relationship synthChildRel : curGraphNode.getRelationships(Direction.OUTGOING, RelType.SYNTHCHILDOF)) {
-                    if (synthTreeName.equals(String.valueOf(synthChildRel.getProperty("name")))) {
-                        done = true;
-                    }
+        JadeNode root = null;
+        // graph node, jade parent (null for the start node) and the rel between them, for each pending node
+        ArrayList<Node> graphNodes = new ArrayList<>();
+        ArrayList<JadeNode> parents = new ArrayList<>();
+        ArrayList<Relationship> incomingRels = new ArrayList<>();
+        graphNodes.add(startNode);
+        parents.add(null);
+        incomingRels.add(null);
+        while (!graphNodes.isEmpty()) {
+            int top = graphNodes.size() - 1;
+            Node curGraphNode = graphNodes.remove(top);
+            JadeNode parentJadeNode = parents.remove(top);
+            Relationship incomingRel = incomingRels.remove(top);
+            
+            JadeNode curNode = new JadeNode();
+            
+            // set the names for the newick string
+            curNode.setName(getNodeLabel(curGraphNode, labelFormat));
+            curNode.assocObject("nodeID", String.valueOf(curGraphNode.getId()));
+            
+            // add the current node to the tree we're building. not addChild(), which is linear per child
+            if (parentJadeNode == null) {
+                root = curNode;
+            } else {
+                parentJadeNode.getChildren().add(curNode);
+                curNode.setParent(parentJadeNode);
+                if (incomingRel.hasProperty("branch_length")) {
+                    curNode.setBL((Double) incomingRel.getProperty("branch_length"));
                 }
             }
-            parentJadeNode.addChild(curNode);
-            if (incomingRel.hasProperty("branch_length")) {
-                curNode.setBL((Double) incomingRel.getProperty("branch_length"));
-            }
-        }
-        
-        // get the immediate synth children of the current node
-        LinkedList<Relationship> synthChildRels = new LinkedList<>();
-        for (Relationship synthChildRel : curGraphNode.getRelationships(Direction.INCOMING, RelType.SYNTHCHILDOF)) {
             
-            // TODO: here is where we would filter synthetic trees using metadata (or in the traversal itself)
-            if (synthTreeName.equals(String.valueOf(synthChildRel.getProperty("name")))) {
-                // currently just filtering on name
-                synthChildRels.add(synthChildRel);
-                //System.out.println("Current rel matches synth tree '" + synthTreeName + "'");
+            // get the immediate synth children of the current node
+            ArrayList<Relationship> synthChildRels = new ArrayList<>();
+            for (Relationship synthChildRel : curGraphNode.getRelationships(Direction.INCOMING, RelType.SYNTHCHILDOF)) {
+                
+                // TODO: here is where we would filter synthetic trees using metadata (or in the traversal itself)
+                if (synthTreeName.equals(String.valueOf(synthChildRel.getProperty("name")))) {
+                    // currently just filtering on name
+                    synthChildRels.add(synthChildRel);
+                }
+            }
+            // reversed, so children are added in rel order
+            for (int i = synthChildRels.size() - 1; i >= 0; i--) {
+                graphNodes.add(synthChildRels.get(i).getStartNode());
+                parents.add(curNode);
+                incomingRels.add(synthChildRels.get(i));
             }
         }
-        // recursively add the children to the tree we're building
-        for (Relationship synthChildRel : synthChildRels) {
-            extractStoredSyntheticTreeRecur(synthChildRel.getStartNode(), curNode, synthChildRel, synthTreeName, labelFormat);
-        }
-        return curNode;
+        return root;
     }
     
     
@@ -54,7 +54,6 @@ public class GraphImporter extends GraphBase {
     private ArrayList<JadeNode> inputJadeTreeLeaves; // just the leaves of the input tree
     // TODO making a Set<Long> or sorted ArrayList<Long> for the ids would make the look ups faster. See comment in testIsMRCA
     private TLongArrayList graphNodeIdsForInputLeaves; // the graph node ids for the nodes matched to the input tree leaves
-    private HashMap<JadeNode,Long> inputJadeTreeLeafToMatchedGraphNodeIdMap; // maps each jade node to the id of the graph node it's mapped to
     private TLongArrayList graphDescendantNodeIdsForInputLeaves; // all the ids of the graph nodes descended from the leaves of the input tree
     private HashMap<JadeNode,ArrayList<Long>> jadeNodeToDescendantGraphNodeIdsMap; // maps each jade node to the node ids in the mrca property of its matched graph node
     
@@ -128,7 +127,6 @@ public class GraphImporter extends GraphBase {
         
         inputJadeTreeLeaves = inputTree.getRoot().getTips();
         graphNodeIdsForInputLeaves = new TLongArrayList();  // was ndids
-        inputJadeTreeLeafToMatchedGraphNodeIdMap = new HashMap<JadeNode,Long>(); // was hashnodeids
         graphDescendantNodeIdsForInputLeaves = new TLongArrayList(); // was ndidssearch
         jadeNodeToDescendantGraphNodeIdsMap = new HashMap<JadeNode,ArrayList<Long>>(); // hashnodeidssearch
     }
@@ -189,10 +187,10 @@ public class GraphImporter extends GraphBase {
             } finally {
                 hits.close();
             }
-            inputJadeTreeLeafToMatchedGraphNodeIdMap.put(curLeaf, matchedGraphNode.getId());
+            curLeaf.setGraphNodeID(matchedGraphNode.getId());
         }
         
-        HashMap<JadeNode, Long> shallowTaxonMappings = new HashMap<JadeNode, Long>(inputJadeTreeLeafToMatchedGraphNodeIdMap);
+        HashMap<JadeNode, Long> shallowTaxonMappings = getMatchedGraphNodeIds();
         System.out.println("attempting to remap tips to deepest exemplified taxa");
 
         tx = graphDb.beginTx();
@@ -208,7 +206,7 @@ public class GraphImporter extends GraphBase {
                 }
                 Node newMatch = getDeepestExemplifiedTaxon(graphDb.getNodeById(originalMatchedNodeId), outgroupIds);
                 if (!originalMatchedNodeId.equals(newMatch.getId())) {
-                    inputJadeTreeLeafToMatchedGraphNodeIdMap.put(curLeaf, newMatch.getId());
+                    curLeaf.setGraphNodeID(newMatch.getId());
                     System.out.println("\t" + curLeaf.getName() + " was remapped to " + getIdString(newMatch));
                 }
             }
@@ -222,7 +220,7 @@ public class GraphImporter extends GraphBase {
         }
         // relabel the tree already
         for (JadeNode curLeaf : inputJadeTreeLeaves) {
-            Node graphNode = graphDb.getNodeById(inputJadeTreeLeafToMatchedGraphNodeIdMap.get(curLeaf));
+            Node graphNode = graphDb.getNodeById(curLeaf.getGraphNodeID());
             curLeaf.setName(graphNode.getProperty("tax_uid").toString());
         }
         return inputTree;
@@ -332,7 +330,7 @@ public class GraphImporter extends GraphBase {
             } finally {
                 hits.close();
             }
-            inputJadeTreeLeafToMatchedGraphNodeIdMap.put(curLeaf, matchedGraphNode.getId());
+            curLeaf.setGraphNodeID(matchedGraphNode.getId());
         }
         gatherInfoForLicaSearches();
     }
@@ -369,7 +367,7 @@ public class GraphImporter extends GraphBase {
                 hits.close();
             }
 
-            inputJadeTreeLeafToMatchedGraphNodeIdMap.put(curLeaf, matchedGraphNode.getId());
+            curLeaf.setGraphNodeID(matchedGraphNode.getId());
         }
         gatherInfoForLicaSearches();
     }
@@ -385,7 +383,7 @@ public class GraphImporter extends GraphBase {
     private void remapTipsToDeepestExemplifiedTaxa() throws Exception {
         
         // preserve the original taxon mappings so we can use these to generate sets of outgroup ids for each tip
-        HashMap<JadeNode, Long> shallowTaxonMappings = new HashMap<JadeNode, Long>(inputJadeTreeLeafToMatchedGraphNodeIdMap);
+        HashMap<JadeNode, Long> shallowTaxonMappings = getMatchedGraphNodeIds();
         System.out.println("attempting to remap tips to deepest exemplified taxa");
 
         tx = graphDb.beginTx();
@@ -412,8 +410,8 @@ public class GraphImporter extends GraphBase {
     
                 } else { // we remapped the leaf to a deeper taxon
                     
-                    // update the map
-                    inputJadeTreeLeafToMatchedGraphNodeIdMap.put(curLeaf, newMatch.getId());
+                    // update the mapping
+                    curLeaf.setGraphNodeID(newMatch.getId());
     
                     // add a relationship that records the mapping
                     Relationship exemplarRel = originalMatchedNode.createRelationshipTo(newMatch, RelType.STREEEXEMPLAROF);
@@ -487,15 +485,25 @@ public class GraphImporter extends GraphBase {
         return idStr.concat("' (id=").concat(String.valueOf(n.getId())).concat(")");
     }
     
+    /**
+     * @return a map from each input tree leaf to the id of the graph node it is currently matched to
+     */
+    private HashMap<JadeNode, Long> getMatchedGraphNodeIds() {
+        HashMap<JadeNode, Long> matches = new HashMap<JadeNode, Long>();
+        for (JadeNode curLeaf : inputJadeTreeLeaves) {
+            matches.put(curLeaf, curLeaf.getGraphNodeID());
+        }
+        return matches;
+    }
+    
     /**
      * Prepopulates several container-class instance variables that will be used during lica searching. Called by the
      * `matchTaxaUsing...` methods, and assumes that the jade node tips have already been matched to graph nodes.
      */
     private void gatherInfoForLicaSearches() {
-        for (Entry<JadeNode, Long> match : inputJadeTreeLeafToMatchedGraphNodeIdMap.entrySet()) {
+        for (JadeNode curLeaf : inputJadeTreeLeaves) {
             
-            JadeNode curLeaf = match.getKey();
-            Node matchedGraphNode = graphDb.getNodeById(match.getValue());
+            Node matchedGraphNode = graphDb.getNodeById(curLeaf.getGraphNodeID());
             
             // add information on node mappings and descendants to instance variables for easy access during import
             // these are used for the lica calculations, etc.
@@ -582,11 +590,11 @@ public class GraphImporter extends GraphBase {
             
             // there is only one lica match: the node to which we mapped this input node
             HashSet<Node> licaMatches = new HashSet<Node>();
-            licaMatches.add(graphDb.getNodeById(inputJadeTreeLeafToMatchedGraphNodeIdMap.get(curJadeNode)));
+            licaMatches.add(graphDb.getNodeById(curJadeNode.getGraphNodeID()));
             curJadeNode.assocObject("dbnodes", licaMatches);
             curJadeNode.assocObject("graph_nodes_mapped_to_descendant_leaves", new LinkedList<Node>(licaMatches));
 
-            TLongArrayList mrcaDescendantIds = new TLongArrayList((long[]) graphDb.getNodeById(inputJadeTreeLeafToMatchedGraphNodeIdMap.get(curJadeNode)).getProperty("mrca"));
+            TLongArrayList mrcaDescendantIds = new TLongArrayList((long[]) graphDb.getNodeById(curJadeNode.getGraphNodeID()).getProperty("mrca"));
 //            long[] mrca = (long[]) graphDb.getNodeById(inputLeafJadeNodeToMatchedGraphNodeIdMap.get(curJadeNode)).getProperty("mrca");
 //            for (long id : mrca) {
 //                mrcaDescendantIds.add(id);
@@ -638,7 +646,7 @@ public class GraphImporter extends GraphBase {
             for (JadeNode curLeaf : curJadeNode.getDescendantLeaves()) {
 
                 // remember the ids for the the graph nodes mapped to each jade tree leaf descended from the current node
-                graphNodesMappedToDescendantLeavesOfThisJadeNode.add(graphDb.getNodeById(inputJadeTreeLeafToMatchedGraphNodeIdMap.get(curLeaf)));
+                graphNodesMappedToDescendantLeavesOfThisJadeNode.add(graphDb.getNodeById(curLeaf.getGraphNodeID()));
 
                 // get the mrca descendants for each leaf descended from this jade node (same info as the mrca fields from the graph nodes we matched to these jade tree leaves)
                 ArrayList<Long> descendantGraphNodeIdsForCurLeaf = jadeNodeToDescendantGraphNodeIdsMap.get(curLeaf);
@@ -818,7 +826,7 @@ public class GraphImporter extends GraphBase {
 
             // store the hits for each of the nodes in the tips
             for (int j = 0; j < nds.size(); j++) {
-                hit_nodes.add(graphDb.getNodeById(inputJadeTreeLeafToMatchedGraphNodeIdMap.get(nds.get(j))));
+                hit_nodes.add(graphDb.getNodeById(nds.get(j).getGraphNodeID()));
                 ArrayList<Long> tlist = jadeNodeToDescendantGraphNodeIdsMap.get(nds.get(j));
                 hit_nodes_small_search.addAll(tlist);
                 for (int k = 0; k < tlist.size(); k++) {
@@ -0,0 +1,365 @@
+package opentree;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import opentree.constants.RelType;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.event.ErrorState;
+import org.neo4j.graphdb.event.KernelEventHandler;
+import org.neo4j.graphdb.index.Index;
+import org.opentree.graphdb.GraphDatabaseAgent;
+
+/**
+ * Everything the services share for one database: the db agent, the standard indexes (opened
+ * once, never reassigned) and the per-synth-tree caches: the tree registry, the in-memory
+ * topology indexes, id resolvers and membership bitsets, the source dictionaries, the decoded
+ * edge annotations and the lineage blobs.
+ *
+ * The server plugins get one context per GraphDatabaseService through forDatabase(), created on
+ * the first request and then shared by all (concurrent) requests until that db shuts down.
+ * Command-line tools that open a db by path get a private context, owned by their GraphBase.
+ *
+ * The topology indexes, id resolvers, membership bitsets and source dictionaries read the graph to
+ * build, so their maps hold a FutureTask per tree: the map locks are only held to look up or place
+ * the task, the first caller builds outside them, and concurrent callers for the same tree wait
+ * for that build while requests for other trees go ahead.
+ */
+public class GraphServiceContext {
+
+    private static final IdentityHashMap<GraphDatabaseService, GraphServiceContext> shared = new IdentityHashMap<>();
+
+    private static final int EDGE_ANNOTATION_CACHE_SIZE = 200000;
+    // ancestor blobs kept per synth tree for lineage requests. set with -Dtreemachine.lineage_cache_size=N
+    private static final int LINEAGE_CACHE_SIZE = Integer.getInteger("treemachine.lineage_cache_size", 50000);
+
+    private final GraphDatabaseAgent graphDb;
+    private final boolean isShared;
+
+    final Index<Node> graphNodeIndex;
+    final Index<Node> graphTaxUIDNodeIndex; // tax_uid is the key, the uid from the taxonomy points to this node
+    final Index<Node> graphOTTNodeIDIndex;
+    final Index<Node> sourceMapIndex;
+    final Index<Node> synthMetaIndex; // metadata nodes for each synth tree
+    final Index<Relationship> synthRelIndex;
+
+    private final SynthTreeRegistry registry;
+    private final HashMap<String, FutureTask<SynthTreeIndex>> treeIndexes = new HashMap<>();
+    private final HashMap<String, FutureTask<SourceDictionary>> dictionaries = new HashMap<>();
+    private final HashMap<String, LineageCache> lineageCaches = new HashMap<>();
+    private final HashMap<String, FutureTask<SynthTreeIdResolver>> resolvers = new HashMap<>();
+    private final HashMap<String, FutureTask<SynthTreeMembership>> memberships = new HashMap<>();
+    private final LinkedHashMap<Long, EdgeAnnotations> edgeAnnotations =
+        new LinkedHashMap<Long, EdgeAnnotations>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry (Map.Entry<Long, EdgeAnnotations> eldest) {
+                return size() > EDGE_ANNOTATION_CACHE_SIZE;
+            }
+        };
+
+
+    /**
+     * A private (unshared) context for the given agent.
+     */
+    public GraphServiceContext (GraphDatabaseAgent graphDb) {
+        this(graphDb, false);
+    }
+
+
+    private GraphServiceContext (GraphDatabaseAgent graphDb, boolean isShared) {
+        this.graphDb = graphDb;
+        this.isShared = isShared;
+        graphNodeIndex = graphDb.getNodeIndex("graphNamedNodes", "type", "exact", "to_lower_case", "true");
+        graphTaxUIDNodeIndex = graphDb.getNodeIndex("graphTaxUIDNodes", "type", "exact", "to_lower_case", "true");
+        graphOTTNodeIDIndex = graphDb.getNodeIndex("graphOTTNodeIDNodes", "type", "exact", "to_lower_case", "true");
+        sourceMapIndex = graphDb.getNodeIndex("sourceMapNodes", "type", "exact", "to_lower_case", "true");
+        // synthetic tree indices
+        synthMetaIndex = graphDb.getNodeIndex("synthMetaNodes", "type", "exact", "to_lower_case", "true");
+        synthRelIndex = graphDb.getRelationshipIndex("synthRels", "type", "exact", "to_lower_case", "true");
+        registry = new SynthTreeRegistry(synthMetaIndex, sourceMapIndex);
+    }
+
+
+    /**
+     * @return the context shared by everything serving this database, created on first use and
+     *     released when the database shuts down
+     */
+    public static GraphServiceContext forDatabase (final GraphDatabaseService graphService) {
+        synchronized (shared) {
+            GraphServiceContext ctx = shared.get(graphService);
+            if (ctx == null) {
+                ctx = new GraphServiceContext(new GraphDatabaseAgent(graphService), true);
+                shared.put(graphService, ctx);
+                graphService.registerKernelEventHandler(new KernelEventHandler() {
+                    @Override
+                    public void beforeShutdown () {
+                        release(graphService);
+                    }
+                    @Override
+                    public void kernelPanic (ErrorState error) {}
+                    @Override
+                    public Object getResource () {
+                        return null;
+                    }
+                    @Override
+                    public ExecutionOrder orderComparedTo (KernelEventHandler other) {
+                        return ExecutionOrder.DOESNT_MATTER;
+                    }
+                });
+            }
+            return ctx;
+        }
+    }
+
+
+    /**
+     * Drop the shared context of a database, with all its caches. Called when the database shuts
+     * down; a later forDatabase() for the same service starts a new context.
+     */
+    public static void release (GraphDatabaseService graphService) {
+        synchronized (shared) {
+            shared.remove(graphService);
+        }
+    }
+
+
+    /**
+     * Drop everything cached about a synth tree in all shared contexts (and the tree list), so a
+     * tree that was just ingested is picked up by running services.
+     */
+    public static void treeIngested (String treeID) {
+        ArrayList<GraphServiceContext> all;
+        synchronized (shared) {
+            all = new ArrayList<>(shared.values());
+        }
+        for (GraphServiceContext ctx : all) {
+            ctx.invalidate(treeID);
+        }
+    }
+
+
+    public GraphDatabaseAgent getGraphDatabaseAgent () {
+        return graphDb;
+    }
+
+
+    /**
+     * @return true if this is a shared per-database context, which must not be shut down by
+     *     individual requests
+     */
+    public boolean isShared () {
+        return isShared;
+    }
+
+
+    public SynthTreeRegistry getRegistry () {
+        return registry;
+    }
+
+
+    /**
+     * @return the topology index of the synth tree if it has already been built, otherwise null
+     */
+    public SynthTreeIndex getLoadedSynthTreeIndex (String treeID) {
+        FutureTask<SynthTreeIndex> task;
+        synchronized (treeIndexes) {
+            task = treeIndexes.get(treeID);
+        }
+        if (task == null || !task.isDone()) {
+            return null;
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException | ExecutionException e) {
+            return null; // a failed build; the next getSynthTreeIndex() retries it
+        }
+    }
+
+
+    /**
+     * @return the topology index of the synth tree, built from the graph on first use
+     * @throws IllegalArgumentException if there is no synth tree treeID
+     */
+    public SynthTreeIndex getSynthTreeIndex (final String treeID) {
+        return getOrBuild(treeIndexes, treeID, new Callable<SynthTreeIndex>() {
+            @Override
+            public SynthTreeIndex call () {
+                Node meta = registry.getMetaNode(treeID);
+                if (meta == null) {
+                    throw new IllegalArgumentException("There is no synthetic tree '" + treeID + "'");
+                }
+                Node root = meta.getSingleRelationship(RelType.SYNTHMETADATAFOR, Direction.OUTGOING).getEndNode();
+                return SynthTreeIndex.build(treeID, root);
+            }
+        });
+    }
+
+
+    /**
+     * @return the membership bitset of the synth tree, loaded from its metadata node (or derived
+     *     from its topology index for older trees) on first use; null if there is no such tree or
+     *     the node ids are too large for a bitset
+     */
+    public SynthTreeMembership getMembership (final String treeID) {
+        return getOrBuild(memberships, treeID, new Callable<SynthTreeMembership>() {
+            @Override
+            public SynthTreeMembership call () {
+                Node meta = registry.getMetaNode(treeID);
+                SynthTreeMembership membership = null;
+                if (meta != null) {
+                    membership = SynthTreeMembership.load(meta);
+                    if (membership == null) {
+                        membership = SynthTreeMembership.fromIndex(getSynthTreeIndex(treeID));
+                    }
+                }
+                return membership;
+            }
+        });
+    }
+
+
+    /**
+     * The value of a per-tree map, built by the first caller outside the map lock; other callers
+     * for the same tree wait for it. A build that fails is removed again, so the next call retries.
+     */
+    private static <V> V getOrBuild (HashMap<String, FutureTask<V>> map, String treeID, Callable<V> build) {
+        FutureTask<V> task;
+        boolean mine = false;
+        synchronized (map) {
+            task = map.get(treeID);
+            if (task == null) {
+                task = new FutureTask<>(build);
+                map.put(treeID, task);
+                mine = true;
+            }
+        }
+        if (mine) {
+            task.run();
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a cache of tree '" + treeID + "'", e);
+        } catch (ExecutionException e) {
+            synchronized (map) {
+                if (map.get(treeID) == task) {
+                    map.remove(treeID);
+                }
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+
+    /**
+     * @return the ott id / node id resolver of the synth tree, built on first use
+     */
+    public SynthTreeIdResolver getIdResolver (String treeID) {
+        final SynthTreeIndex index = getSynthTreeIndex(treeID);
+        Callable<SynthTreeIdResolver> build = new Callable<SynthTreeIdResolver>() {
+            @Override
+            public SynthTreeIdResolver call () {
+                return new SynthTreeIdResolver(index, graphDb);
+            }
+        };
+        SynthTreeIdResolver resolver = getOrBuild(resolvers, treeID, build);
+        if (resolver.getIndex() != index) { // built over an index that has since been replaced
+            synchronized (resolvers) {
+                FutureTask<SynthTreeIdResolver> task = resolvers.get(treeID);
+                if (task != null && task.isDone()) {
+                    resolvers.remove(treeID);
+                }
+            }
+            resolver = getOrBuild(resolvers, treeID, build);
+        }
+        return resolver;
+    }
+
+
+    /**
+     * @return the source dictionary of the synth tree, built on first use
+     */
+    public SourceDictionary getSourceDictionary (final String treeID) {
+        return getOrBuild(dictionaries, treeID, new Callable<SourceDictionary>() {
+            @Override
+            public SourceDictionary call () {
+                return new SourceDictionary(treeID, registry.getMetaNode(treeID), registry.getSourceMapNode(treeID));
+            }
+        });
+    }
+
+
+    /**
+     * @return the cache of lineage node blobs of the synth tree
+     */
+    public LineageCache getLineageCache (String treeID) {
+        synchronized (lineageCaches) {
+            LineageCache cache = lineageCaches.get(treeID);
+            if (cache == null) {
+                cache = new LineageCache(LINEAGE_CACHE_SIZE);
+                lineageCaches.put(treeID, cache);
+            }
+            return cache;
+        }
+    }
+
+
+    /**
+     * @return the decoded annotations of a SYNTHCHILDOF rel of treeID, from the cache if possible
+     */
+    public EdgeAnnotations getEdgeAnnotations (Relationship rel, String treeID) {
+        Long relID = rel.getId();
+        synchronized (edgeAnnotations) {
+            EdgeAnnotations ea = edgeAnnotations.get(relID);
+            if (ea != null) {
+                return ea;
+            }
+        }
+        EdgeAnnotations ea = EdgeAnnotations.decode(rel, getSourceDictionary(treeID).getSourceTable());
+        synchronized (edgeAnnotations) {
+            edgeAnnotations.put(relID, ea);
+        }
+        return ea;
+    }
+
+
+    /**
+     * Forget everything cached about a synth tree, and the list of trees.
+     */
+    public void invalidate (String treeID) {
+        registry.invalidate();
+        synchronized (treeIndexes) {
+            treeIndexes.remove(treeID);
+        }
+        synchronized (resolvers) {
+            resolvers.remove(treeID);
+        }
+        synchronized (memberships) {
+            memberships.remove(treeID);
+        }
+        synchronized (dictionaries) {
+            dictionaries.remove(treeID);
+        }
+        synchronized (lineageCaches) {
+            lineageCaches.remove(treeID);
+        }
+        synchronized (edgeAnnotations) {
+            edgeAnnotations.clear();
+        }
+    }
+}
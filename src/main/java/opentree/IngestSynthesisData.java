@@ -1,20 +1,20 @@
 package opentree;
 
-import jade.tree.deprecated.JadeNode;
-import jade.tree.deprecated.JadeTree;
-import jade.tree.deprecated.TreeReader;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.StringTokenizer;
 import opentree.constants.NodeProperty;
+import opentree.constants.RelProperty;
 import opentree.constants.RelType;
 import opentree.exceptions.TreeIngestException;
 import org.json.simple.JSONArray;
@@ -39,7 +39,6 @@ public class IngestSynthesisData extends GraphBase {
     
     // containers used during import
     private HashSet<String> ottIDs;
-    private String inputNewick;
     private String synthTreeName; // get this from the json: "tree_id": "a synthesis version id"
     private String rootTaxonID;
     private String taxonomyVersion;
@@ -48,11 +47,14 @@ public class IngestSynthesisData extends GraphBase {
     
     JSONObject nodeMetaData;// nodeMetaData = (JSONObject) jsonObject.get("nodes");
     
-    private JadeTree inputJadeTree;
+    private int rootPreorder; // interval labels of the newick root, which has no SYNTHCHILDOF rel
+    private int rootPostorder;
     //private HashMap<String, String> sourceMap; // probably do not need this
     private HashMap<String, HashMap<String, String> > taxNodeInfo;
     
     private HashMap<String, Node> taxUIDToNodeMap;
+    private LinkedHashMap<String, Integer> annotationSourceIDs; // sources named in edge annotations -> int id
+    private BitSet synthMembers; // neo4j ids of the tree's nodes; null if an id does not fit
     //private HashMap<String, String> childNodeIDToParentNodeIDMap;
     
     public IngestSynthesisData(String graphFileName) {
@@ -78,13 +80,13 @@ public class IngestSynthesisData extends GraphBase {
     */
     
     private void initilaize() {
-        inputJadeTree = new JadeTree();
         ottIDs = new HashSet<>();
         nNodesToCommit = 0;
         synthTreeName = "";
         rootTaxonID = "";
         taxNodeInfo = new HashMap<>();
         taxUIDToNodeMap = new HashMap<>();
+        annotationSourceIDs = new LinkedHashMap<>();
         //childNodeIDToParentNodeIDMap = new HashMap<String, String>();
     }
     
@@ -125,143 +127,92 @@ public class IngestSynthesisData extends GraphBase {
         System.out.println("rootTaxonID = " + rootTaxonID);
         taxonomyVersion = String.valueOf(jsonObject.get("taxonomy_version"));
         
-        readNewick(newickFile);
-        collectOTTIDs(); // don't think i need this anymore...
+        // the newick is streamed twice: once for the taxa to keep, once to write the tree
+        System.out.println("Reading tree from file: " + newickFile);
+        ottIDs = SynthTreeStreamIngest.collectOTTIDs(newickFile);
         //readTaxonomyTSV(taxFile);
         processTaxonomyTSV(taxFile);
         //processTaxonomyTSV(taxFile);
         
         nNodesToCommit = 0; // reset after taxonomy nodes
+        synthMembers = new BitSet();
+        long start = System.nanoTime();
         tx = graphDb.beginTx();
-        postOrderAddTreeToGraph(inputJadeTree.getRoot());
-        tx.success();
-        
-        System.out.println("Committing nodes: " + nNodesToCommit);
-        tx.finish();
-        
-        setRootMetadata();
-    }
-    
-    
-    private void readNewick (String newickFile) {
-        System.out.println("Reading tree from file: " + newickFile);
+        SynthTreeStreamIngest.Result res;
         try {
-            BufferedReader br = new BufferedReader(new FileReader(newickFile));
-            inputNewick =  br.readLine();
-            br.close();
-        } catch (IOException ioe) {}
-        
-        TreeReader tr = new TreeReader();
-        inputJadeTree = tr.readTree(inputNewick);
-    }
-    
-    
-    // collect all ott ids from the ingested jade tree
-    // used when processing taxonomy tsv file
-    private void collectOTTIDs () {
-        // collect all ottids
-        Iterable<JadeNode> terp = inputJadeTree.iterateExternalNodes();
-        for (JadeNode tt : terp) {
-            String str = tt.getName();
-            if (str.startsWith("ott")) {
-                ottIDs.add(str.replace("ott", ""));
-            }
+            res = SynthTreeStreamIngest.write(newickFile, new SynthTreeStreamIngest.Sink() {
+                @Override
+                public long node (String otNodeID) throws TreeIngestException {
+                    return addTreeNode(otNodeID);
+                }
+                @Override
+                public void edge (long childID, long parentID, String childOTNodeID, int preorder, int postorder,
+                        int tipDescendants) {
+                    addTreeEdge(childID, parentID, childOTNodeID, preorder, postorder, tipDescendants);
+                }
+            });
+            tx.success();
+            System.out.println("Committing nodes: " + nNodesToCommit);
+        } finally {
+            tx.finish();
         }
-        System.out.println("Collected " + ottIDs.size() + " terminal ottIDs.");
+        TaxonomyBulkLoader.report("tree nodes and rels", res.numNodes, "nodes", -1,
+            (System.nanoTime() - start) / 1000000000.0);
         
-        terp = inputJadeTree.iterateInternalNodes();
-        for (JadeNode tt : terp) {
-            String str = tt.getName();
-            if (str.startsWith("ott")) {
-                ottIDs.add(str.replace("ott", ""));
-            }
+        if (synthRootNode == null) { // no node named after the root taxon; use the newick root
+            synthRootNode = graphDb.getNodeById(res.rootID);
         }
-        System.out.println("Collected " + ottIDs.size() + " total ottIDs.");
+        rootPreorder = res.rootPreorder;
+        rootPostorder = res.rootPostorder;
+        setRootMetadata();
     }
     
     
-    // doesn't store templines in an arraylist, so should be better on memory?
-    private void processTaxonomyTSV (String fileName) {
+    // the tsv is parsed in parallel (TaxonomyBulkLoader); only the retained taxa are kept, and
+    // written here transactionally
+    private void processTaxonomyTSV (String fileName) throws IOException {
         
-        int count = 0;
         int taxCount = 0;
         long start = 0;
         long time = 0;
         
         System.out.println("Reading taxonomy from file: " + fileName);
+        TaxonomyBulkLoader.ParseResult parsed = TaxonomyBulkLoader.parse(fileName, ottIDs,
+            Runtime.getRuntime().availableProcessors());
         
         tx = graphDb.beginTx();
         System.out.println("Creating taxonomic nodes.");
         
         start = System.nanoTime();
-        try {
-            BufferedReader br = new BufferedReader(new FileReader(fileName));
-            String str = "";
-            while ((str = br.readLine()) != null) {
-                if (!str.trim().equals("")) {
-                    if (str.startsWith("uid")) {
-                        //System.out.println("Skipping taxonomy header");
-                        continue;
-                    }
-                    count += 1;
-                    // does taxon appear in tree?
-                    if (ottIDs.contains(str.substring(0, str.indexOf("\t")))) {
-                        
-                        if (nNodesToCommit % commitFrequency == 0 && nNodesToCommit > 0) {
-                            System.out.println("Committing nodes " + (nNodesToCommit - commitFrequency + 1) + " through " + nNodesToCommit);
-                            tx.success();
-                            tx.finish();
-                            tx = graphDb.beginTx();
-                        }
-
-                        // increment for the transaction frequency
-                        nNodesToCommit++;
-                        taxCount++;
-                        Node newGraphNode = graphDb.createNode();
-                        
-                        StringTokenizer st = new StringTokenizer(str, "|");
-                        String tid = null;
-                        String pid = null; // don't want to keep
-                        String name = null;
-                        String rank = null;
-                        String srce = null;
-                        String unique_name = null;
-                        String flag = null; // don't want to keep
-                        try {
-                            tid = st.nextToken().trim();
-                            pid = st.nextToken().trim();
-                            name = st.nextToken().trim();
-                            rank = st.nextToken().trim();
-                            srce = st.nextToken().trim();
-                            unique_name = st.nextToken().trim();
-                            flag = st.nextToken().trim();
-                        } catch (NoSuchElementException ex) {
-                            throw new NoSuchElementException("The taxonomy file appears to be missing some fields.");
-                        }
-                        String otNodeID = "ott" + tid;
-                        newGraphNode.setProperty(NodeProperty.OT_NODE_ID.propertyName, otNodeID);
-                        newGraphNode.setProperty(NodeProperty.NAME.propertyName, name);
-                        newGraphNode.setProperty(NodeProperty.TAX_UID.propertyName, tid);
-                        newGraphNode.setProperty(NodeProperty.TAX_RANK.propertyName, rank);
-                        newGraphNode.setProperty(NodeProperty.TAX_SOURCE.propertyName, srce);
-                        String uName = unique_name;
-                        if ("".equals(uName)) {
-                            uName = name;
-                        }
-                        newGraphNode.setProperty(NodeProperty.NAME_UNIQUE.propertyName, uName);
-
-                        // add to indices
-                        graphNodeIndex.add(newGraphNode, NodeProperty.NAME.propertyName, name);
-                        graphTaxUIDNodeIndex.add(newGraphNode, NodeProperty.TAX_UID.propertyName, tid);
-                        graphOTTNodeIDIndex.add(newGraphNode, NodeProperty.OT_NODE_ID.propertyName, otNodeID);
-
-                        // add to map for later retrieval
-                        taxUIDToNodeMap.put(otNodeID, newGraphNode);
-                    }
-                }
+        for (TaxonomyBulkLoader.Taxon taxon : parsed.taxa) {
+            if (nNodesToCommit % commitFrequency == 0 && nNodesToCommit > 0) {
+                System.out.println("Committing nodes " + (nNodesToCommit - commitFrequency + 1) + " through " + nNodesToCommit);
+                tx.success();
+                tx.finish();
+                tx = graphDb.beginTx();
             }
-            br.close();
-        } catch (IOException ioe) {}
+            
+            // increment for the transaction frequency
+            nNodesToCommit++;
+            taxCount++;
+            Node newGraphNode = graphDb.createNode();
+            
+            String otNodeID = taxon.getOTNodeID();
+            newGraphNode.setProperty(NodeProperty.OT_NODE_ID.propertyName, otNodeID);
+            newGraphNode.setProperty(NodeProperty.NAME.propertyName, taxon.name);
+            newGraphNode.setProperty(NodeProperty.TAX_UID.propertyName, taxon.tid);
+            newGraphNode.setProperty(NodeProperty.TAX_RANK.propertyName, taxon.rank);
+            newGraphNode.setProperty(NodeProperty.TAX_SOURCE.propertyName, taxon.srce);
+            newGraphNode.setProperty(NodeProperty.NAME_UNIQUE.propertyName, taxon.uniqueName);
+            
+            // add to indices
+            graphNodeIndex.add(newGraphNode, NodeProperty.NAME.propertyName, taxon.name);
+            graphTaxUIDNodeIndex.add(newGraphNode, NodeProperty.TAX_UID.propertyName, taxon.tid);
+            graphOTTNodeIDIndex.add(newGraphNode, NodeProperty.OT_NODE_ID.propertyName, otNodeID);
+            
+            // add to map for later retrieval
+            taxUIDToNodeMap.put(otNodeID, newGraphNode);
+        }
         
         // commit remaining
         tx.success();
@@ -269,8 +220,7 @@ public class IngestSynthesisData extends GraphBase {
         tx.finish();
         
         time = System.nanoTime() - start;
-        System.out.println("Read " + count + " taxa; retained " + taxCount + ".");
-        System.out.println("Processed taxa in: " + time / 1000000000.0 + " seconds.");
+        TaxonomyBulkLoader.report("taxonomy nodes", taxCount, "nodes", -1, time / 1000000000.0);
     }
     
     
@@ -299,6 +249,48 @@ public class IngestSynthesisData extends GraphBase {
         
         System.out.println("Metadatanode = " + metadatanode.getId());
         
+        for (Map.Entry<String, Object> prop : getTreeMetadata(jsonObject).entrySet()) {
+            metadatanode.setProperty(prop.getKey(), prop.getValue());
+        }
+        
+        // edge annotations refer to sources by index into this
+        metadatanode.setProperty(EdgeAnnotations.SOURCE_TABLE,
+            annotationSourceIDs.keySet().toArray(new String[annotationSourceIDs.size()]));
+        
+        // store root ot_node_id here for fast retrieval
+        metadatanode.setProperty("root_ot_node_id", synthRootNode.getProperty("ot_node_id"));
+        // root has no SYNTHCHILDOF rel to carry its interval labels
+        metadatanode.setProperty("root_preorder", rootPreorder);
+        metadatanode.setProperty("root_postorder", rootPostorder);
+        // membership bitset, so services need not check the rels of a node to see if it is in the tree
+        if (synthMembers != null) {
+            SynthTreeMembership.store(metadatanode, synthMembers);
+        }
+        System.out.println("Adding synthid '" + synthTreeName + "' to metaindex!");
+        synthMetaIndex.add(metadatanode, "name", synthTreeName);
+        
+        // put sources in separate node for easier retrieval. points to metadatanode
+        Node sourceMeta = graphDb.createNode();
+        storeSourceMetaData(sourceMeta);
+        sourceMeta.createRelationshipTo(metadatanode, RelType.SOURCEMETADATAFOR);
+        
+        System.out.println("Sources node = " + sourceMeta.getId());
+        sourceMapIndex.add(sourceMeta, "name", synthTreeName);
+        tx.success();
+        tx.finish();
+        
+        // in case services in this JVM already cached anything for this tree id
+        context.invalidate(synthTreeName);
+        GraphServiceContext.treeIngested(synthTreeName);
+    }
+    
+    
+    /**
+     * The metadata node properties that come straight from the annotations json: the simple
+     * top-level values, "filtered_flags" and "sources". Shared with BulkIngestSynthesisData.
+     */
+    static LinkedHashMap<String, Object> getTreeMetadata (JSONObject jsonObject) {
+        LinkedHashMap<String, Object> props = new LinkedHashMap<>();
         // *** TODO: loop over properties rather than add hard-coded ones (may change)
         
         Iterator baseIter = jsonObject.entrySet().iterator();
@@ -307,7 +299,7 @@ public class IngestSynthesisData extends GraphBase {
             
             if (!(entry.getValue() instanceof JSONObject) && !(entry.getValue() instanceof JSONArray)) {
                 System.out.println("Dealing with simple property: " + entry.getKey());
-                metadatanode.setProperty(entry.getKey().toString(), entry.getValue());
+                props.put(entry.getKey().toString(), entry.getValue());
                 
         // nested arrays are a problem, as neo4j doesn't store them as properties
             } else if (entry.getValue() instanceof JSONArray) {
@@ -338,33 +330,18 @@ public class IngestSynthesisData extends GraphBase {
 		List<String> flagList = (List<String>)flagListObj;
 		flist = flagList.toArray(new String[flagList.size()]);
 	} 
-        metadatanode.setProperty("filtered_flags", flist);
+        props.put("filtered_flags", flist);
         
         List<String> sourceList = (ArrayList<String>) jsonObject.get("sources");
         String[] slist = sourceList.toArray(new String[sourceList.size()]);
-        metadatanode.setProperty("sources", slist);
-        
-        // store root ot_node_id here for fast retrieval
-        metadatanode.setProperty("root_ot_node_id", synthRootNode.getProperty("ot_node_id"));
-        System.out.println("Adding synthid '" + synthTreeName + "' to metaindex!");
-        synthMetaIndex.add(metadatanode, "name", synthTreeName);
-        
-        // put sources in separate node for easier retrieval. points to metadatanode
-        Node sourceMeta = graphDb.createNode();
-        storeSourceMetaData(sourceMeta);
-        sourceMeta.createRelationshipTo(metadatanode, RelType.SOURCEMETADATAFOR);
-        
-        System.out.println("Sources node = " + sourceMeta.getId());
-        sourceMapIndex.add(sourceMeta, "name", synthTreeName);
-        tx.success();
-        tx.finish();
+        props.put("sources", slist);
+        return props;
     }
     
     
-    // recursive
+    // SynthTreeStreamIngest sink: the graph node of a tree node, called in postorder
     // TODO: if newGraph == false, need to check existing nodes
-    // TODO: add tax nodes earlier, check existing here
-    private void postOrderAddTreeToGraph (JadeNode curJadeNode) throws TreeIngestException {
+    private long addTreeNode (String otNodeID) throws TreeIngestException {
         if (nNodesToCommit % commitFrequency == 0 && nNodesToCommit > 0) {
             System.out.println("Committing nodes " + (nNodesToCommit - commitFrequency + 1) + " through " + nNodesToCommit);
             tx.success();
@@ -375,91 +352,76 @@ public class IngestSynthesisData extends GraphBase {
         // increment for the transaction frequency
         nNodesToCommit++;
         
-        // postorder traversal via recursion
-        for (int i = 0; i < curJadeNode.getChildCount(); i++) {
-            postOrderAddTreeToGraph(curJadeNode.getChild(i));
-        }
-        
-        String otNodeID = curJadeNode.getName();
         Node newGraphNode = null;
         
         // taxonomy node; will already exist
-        if (curJadeNode.getName().startsWith("ott")) {
+        if (otNodeID.startsWith("ott")) {
             newGraphNode = taxUIDToNodeMap.get(otNodeID);
+            if (newGraphNode == null) {
+                throw new TreeIngestException("Taxon '" + otNodeID + "' of the tree is not in the taxonomy.");
+            }
         } else {
             // have to create this one
             newGraphNode = graphDb.createNode();
             newGraphNode.setProperty(NodeProperty.OT_NODE_ID.propertyName, otNodeID);
             if (verbose) {
-                System.out.print("Added " + newGraphNode + ": " + otNodeID);
-                if (curJadeNode.isTheRoot()) {
-                    System.out.print("\n");
-                } else {
-                    System.out.print(". Parent node: " + curJadeNode.getParent().getName() + "\n");
-                }
+                System.out.println("Added " + newGraphNode + ": " + otNodeID);
             }
             graphOTTNodeIDIndex.add(newGraphNode, NodeProperty.OT_NODE_ID.propertyName, otNodeID);
         }
         
-        // taxonomy node; add info from hashmap
-//        if (curJadeNode.getName().startsWith("ott")) {
-//            HashMap<String, String> taxDat = taxNodeInfo.get(otNodeID);
-//            newGraphNode.setProperty(NodeProperty.NAME.propertyName, taxDat.get("name"));
-//            newGraphNode.setProperty(NodeProperty.TAX_UID.propertyName, taxDat.get("tid"));
-//            newGraphNode.setProperty(NodeProperty.TAX_RANK.propertyName, taxDat.get("rank"));
-//            newGraphNode.setProperty(NodeProperty.TAX_SOURCE.propertyName, taxDat.get("srce"));
-//            String uName = taxDat.get("unique_name");
-//            if ("".equals(uName)) {
-//                uName = taxDat.get("name");
-//            }
-//            newGraphNode.setProperty(NodeProperty.NAME_UNIQUE.propertyName, uName);
-//            graphNodeIndex.add(newGraphNode, NodeProperty.NAME.propertyName, taxDat.get("name"));
-//            graphTaxUIDNodeIndex.add(newGraphNode, NodeProperty.TAX_UID.propertyName, taxDat.get("tid"));
-//        }
-        
-        //graphOTTNodeIDIndex.add(newGraphNode, NodeProperty.OT_NODE_ID.propertyName, otNodeID);
-        
-        curJadeNode.assocObject("gid", newGraphNode.getId());
-        
-        for (int i = 0; i < curJadeNode.getChildCount(); i++) {
-            
-            Node childNode = graphDb.getNodeById((Long) curJadeNode.getChild(i).getObject("gid"));
-            Relationship newRel = childNode.createRelationshipTo(newGraphNode, RelType.SYNTHCHILDOF);
-            newRel.setProperty("name", synthTreeName);
-            
-            String childID = curJadeNode.getChild(i).getName();
-            HashMap<String, String> res = getAnnotations(childID);
-            for (Map.Entry<String, String> entry : res.entrySet()) {
-                newRel.setProperty(entry.getKey(), entry.getValue());
-            }
-            // add number of tip descendants; could differ depending on taxonomy, filtering, etc.
-            // JadeTree gives ntips of 1 for terminals, hence the ugliness below
-            int ntips = 0;
-            if (curJadeNode.getChild(i).isInternal()) {
-                ntips = curJadeNode.getChild(i).getDescendantLeavesNumbers();
-            }
-            
-            newRel.setProperty("tip_descendants", ntips);
-            synthRelIndex.add(newRel, "draftTreeID", synthTreeName);
-            
-            if (verbose) {
-                System.out.println("   Created " + newRel + ": " + childNode + "(" + 
-                    childNode.getProperty("ot_node_id") + ")"
-                    + " -> " + newGraphNode + "(" + newGraphNode.getProperty("ot_node_id") + ")");
-            }
+        if (synthMembers != null && !SynthTreeMembership.set(synthMembers, newGraphNode.getId())) {
+            synthMembers = null;
         }
         
-        if (curJadeNode.getName().equals(rootTaxonID)) {
+        if (otNodeID.equals(rootTaxonID)) {
             System.out.println("This is the ROOT");
             synthRootNode = newGraphNode;
             System.out.println("Root node = " + synthRootNode.getId());
         }
+        return newGraphNode.getId();
+    }
+    
+    
+    // SynthTreeStreamIngest sink: the SYNTHCHILDOF rel of a child, called when its parent closes
+    private void addTreeEdge (long childID, long parentID, String childOTNodeID, int preorder, int postorder,
+            int tipDescendants) {
+        Node childNode = graphDb.getNodeById(childID);
+        Node parentNode = graphDb.getNodeById(parentID);
+        Relationship newRel = childNode.createRelationshipTo(parentNode, RelType.SYNTHCHILDOF);
+        newRel.setProperty("name", synthTreeName);
+        // [preorder, postorder] ranks make ancestor tests two integer comparisons
+        newRel.setProperty(RelProperty.PREORDER.propertyName, preorder);
+        newRel.setProperty(RelProperty.POSTORDER.propertyName, postorder);
+        
+        HashMap<String, String> res = getAnnotations(childOTNodeID);
+        for (Map.Entry<String, String> entry : res.entrySet()) {
+            if (EdgeAnnotations.TYPED_KEYS.contains(entry.getKey())) {
+                EdgeAnnotations.store(newRel, entry.getKey(), entry.getValue(), annotationSourceIDs);
+            } else {
+                newRel.setProperty(entry.getKey(), entry.getValue());
+            }
+        }
+        // add number of tip descendants; could differ depending on taxonomy, filtering, etc.
+        newRel.setProperty("tip_descendants", tipDescendants);
+        synthRelIndex.add(newRel, "draftTreeID", synthTreeName);
+        
+        if (verbose) {
+            System.out.println("   Created " + newRel + ": " + childNode + "(" + childOTNodeID + ")"
+                + " -> " + parentNode + "(" + parentNode.getProperty("ot_node_id") + ")");
+        }
     }
     
     
     // convert to strings, because: neo4j does not support nested values
     // taxonomy not annotated; add in here (maybe?)
     private HashMap<String, String> getAnnotations (String otNodeID) {
+        return getAnnotations(nodeMetaData, taxonomyVersion, otNodeID);
+    }
+    
+    
+    // shared with BulkIngestSynthesisData
+    static HashMap<String, String> getAnnotations (JSONObject nodeMetaData, String taxonomyVersion, String otNodeID) {
         
         HashMap<String, String> res = new HashMap<>();
         // will not have annotations if just taxonomy
@@ -510,6 +472,15 @@ public class IngestSynthesisData extends GraphBase {
     */
     // store source_id_map in node. hacky; will clean up later
     private void storeSourceMetaData (Node metaNode) {
+        for (Map.Entry<String, Object> prop : getSourceMetaData(jsonObject, taxonomyVersion).entrySet()) {
+            metaNode.setProperty(prop.getKey(), prop.getValue());
+        }
+    }
+    
+    
+    // the source map node properties; shared with BulkIngestSynthesisData
+    static LinkedHashMap<String, Object> getSourceMetaData (JSONObject jsonObject, String taxonomyVersion) {
+        LinkedHashMap<String, Object> props = new LinkedHashMap<>();
         JSONObject sourceIDMap = (JSONObject) jsonObject.get("source_id_map");
         
         Iterator srcIter = sourceIDMap.keySet().iterator();
@@ -523,7 +494,7 @@ public class IngestSynthesisData extends GraphBase {
                 if (str != "") { str += ","; }
                 str += entry.getKey() + ":" + (String) entry.getValue();
             }
-            metaNode.setProperty(srcID, str);
+            props.put(srcID, str);
         }
         // add taxonomy as a source
         // temp; will come from json
@@ -536,7 +507,8 @@ public class IngestSynthesisData extends GraphBase {
         //    }
         String tax = "taxonomy:" + "ott" + taxonomyVersion;
         String pName = "ott" + taxonomyVersion;
-        metaNode.setProperty(pName, tax);
+        props.put(pName, tax);
+        return props;
     }
     
     
@@ -0,0 +1,93 @@
+package opentree;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Node blobs (see GraphExplorer.getNodeBlob) of the ancestors met by lineage requests on one synth
+ * tree, bounded LRU keyed by neo4j node id. The top of the tree is in nearly every lineage, so
+ * those blobs are built (annotation decoding, tip counts) once instead of on every request.
+ *
+ * Each entry keeps the sources its blob refers to, so a hit still contributes them to the
+ * caller's source_id_map. Held by GraphServiceContext; ingesting the tree drops it. Cached blobs
+ * are shared: do not modify them.
+ */
+public class LineageCache {
+
+    private final int maxSize;
+    private final LinkedHashMap<Long, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private static class Entry {
+        final HashMap<String, Object> blob;
+        final HashSet<String> sources;
+
+        Entry (HashMap<String, Object> blob, HashSet<String> sources) {
+            this.blob = blob;
+            this.sources = sources;
+        }
+    }
+
+
+    public LineageCache (final int maxSize) {
+        this.maxSize = maxSize;
+        entries = new LinkedHashMap<Long, Entry>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry (Map.Entry<Long, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+
+    /**
+     * @param nodeID the neo4j node id
+     * @param uniqueSources if the blob is cached, its sources are added to this
+     * @return the cached blob, or null
+     */
+    public HashMap<String, Object> get (long nodeID, HashSet<String> uniqueSources) {
+        Entry e;
+        synchronized (entries) {
+            e = entries.get(nodeID);
+        }
+        if (e == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        uniqueSources.addAll(e.sources);
+        return e.blob;
+    }
+
+
+    /**
+     * @param nodeID the neo4j node id
+     * @param blob the node blob
+     * @param sources the sources the blob refers to
+     */
+    public void put (long nodeID, HashMap<String, Object> blob, HashSet<String> sources) {
+        if (maxSize <= 0) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(nodeID, new Entry(blob, sources));
+        }
+    }
+
+
+    public HashMap<String, Object> getMetrics () {
+        HashMap<String, Object> res = new HashMap<>();
+        synchronized (entries) {
+            res.put("size", entries.size());
+        }
+        res.put("max_size", maxSize);
+        res.put("hits", hits.get());
+        res.put("misses", misses.get());
+        return res;
+    }
+}
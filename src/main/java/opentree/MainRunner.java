@@ -2,21 +2,26 @@ package opentree;
 
 import gnu.trove.set.hash.TLongHashSet;;
 import jade.deprecated.MessageLogger;
+import jade.tree.CompactTree;
+import jade.tree.NewickParser;
 import jade.tree.deprecated.JadeNode;
 import jade.tree.deprecated.JadeTree;
 import jade.tree.deprecated.NexsonReader;
-import jade.tree.deprecated.TreeReader;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Stack;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
 import opentree.exceptions.TreeIngestException;
 import org.apache.commons.lang3.StringUtils;
 import org.json.simple.JSONObject;
@@ -33,19 +38,25 @@ import org.opentree.utils.GeneralUtils;
 public class MainRunner {
     
     public int ingestSynthesisData(String [] args) throws FileNotFoundException, TaxonNotFoundException, TreeIngestException, IOException {
-        if (args.length != 5) {
-            System.out.println("arguments should be: newickFile jsonFile tsvFile graphName");
+        boolean bulk = args.length == 6 && "--bulk".equals(args[1]);
+        if (args.length != 5 && !bulk) {
+            System.out.println("arguments should be: [--bulk] newickFile jsonFile tsvFile graphName");
             return 1;
         }
+        int offset = bulk ? 1 : 0;
         
-        String newickFile = args[1];
-        String jsonFile   = args[2];
-        String taxFile    = args[3]; // taxonomy.tsv from ott
-        String graphName  = args[4];
+        String newickFile = args[1 + offset];
+        String jsonFile   = args[2 + offset];
+        String taxFile    = args[3 + offset]; // taxonomy.tsv from ott
+        String graphName  = args[4 + offset];
         
         boolean isNewGraph = true;
         boolean multiTreeAllowed = false;
         
+        if (bulk && new File(graphName).exists()) {
+            System.out.println("\nError: --bulk only loads into a new graph, and '" + graphName + "' exists.");
+            return 1;
+        }
         if (new File(graphName).exists()) {
             isNewGraph = false;
             if (!isNewGraph) {
@@ -74,6 +85,11 @@ public class MainRunner {
             return -1;
         }
         
+        if (bulk) {
+            BulkIngestSynthesisData bl = new BulkIngestSynthesisData(graphName);
+            bl.buildDB(newickFile, jsonFile, taxFile);
+            return 0;
+        }
         IngestSynthesisData tl = new IngestSynthesisData(graphName);
         tl.buildDB(newickFile, jsonFile, taxFile, isNewGraph);
 
@@ -239,7 +255,8 @@ public class MainRunner {
     
     
     /**
-     * Constructs a newick tree file from a passed in taxonomy file
+     * Constructs a newick tree file from a passed in taxonomy file. Labels that contain blanks or
+     * any of ()[],:;' are written single-quoted, with inner quotes doubled
      * arguments are:
      * taxonomy_filename output_tree_filename uids_as_labels[T|F]
      * @param args
@@ -252,8 +269,7 @@ public class MainRunner {
             System.out.println("arguments should be: taxonomyfile treefile (optional:labels=UIDs [T|F])");
             return 1;
         }
-        JadeTree tree = null;
-        JadeNode root = null;
+        CompactTree tree = null;
         String cellular = "93302"; // default. for full tree.
         Boolean cellularHit = false;
         String taxonomyRoot = "";
@@ -270,7 +286,7 @@ public class MainRunner {
             BufferedReader br = new BufferedReader(new FileReader(taxonomyfile));
             String str;
             int count = 0;
-            HashMap<String,JadeNode> id_node_map = new HashMap<String,JadeNode>();
+            HashMap<String,String> id_label_map = new HashMap<String,String>();
             HashMap<String,ArrayList<String>> id_childs = new HashMap<String,ArrayList<String>>();
             while ((str = br.readLine()) != null) {
                 // check the first line to see if it the file has a header that we should skip
@@ -308,34 +324,32 @@ public class MainRunner {
                         id_childs.put(pid, new ArrayList<String>());
                     }
                     id_childs.get(pid).add(tid);
-                    JadeNode tnode = new JadeNode();
                     if (uidLabels) {
-                        tnode.setName(("ott").concat(tid));
+                        id_label_map.put(tid, ("ott").concat(tid));
                     } else {
-                        tnode.setName(GeneralUtils.scrubName(name).concat("_ott").concat(tid));
+                        id_label_map.put(tid, GeneralUtils.scrubName(name).concat("_ott").concat(tid));
                     }
-                    tnode.assocObject("id", tid);
-                    id_node_map.put(tid, tnode);
                 }
             }
             br.close();
             count = 0;
-            // construct tree
-            Stack <JadeNode> nodes = new Stack<JadeNode>();
+            // construct tree. compact, since the taxonomy has millions of nodes
+            tree = new CompactTree(id_label_map.size());
+            ArrayList<String> node_ids = new ArrayList<String>(); // taxonomy id of each tree node
+            Stack <Integer> nodes = new Stack<Integer>();
             if (cellularHit) {
                 taxonomyRoot = cellular;
             }
             System.out.println("Setting root to: " + taxonomyRoot);
-            root = id_node_map.get(taxonomyRoot);
-            
-            nodes.add(root);
+            nodes.add(tree.addNode(CompactTree.NO_NODE, id_label_map.get(taxonomyRoot)));
+            node_ids.add(taxonomyRoot);
             while (nodes.empty() == false) {
-                JadeNode tnode = nodes.pop();
+                int tnode = nodes.pop();
                 count += 1;
-                ArrayList<String> childs = id_childs.get((String)tnode.getObject("id"));
+                ArrayList<String> childs = id_childs.get(node_ids.get(tnode));
                 for (int i = 0; i < childs.size(); i++) {
-                    JadeNode ttnode = id_node_map.get(childs.get(i));
-                    tnode.addChild(ttnode);
+                    int ttnode = tree.addNode(tnode, id_label_map.get(childs.get(i)));
+                    node_ids.add(childs.get(i));
                     if (id_childs.containsKey(childs.get(i))) {
                         nodes.add(ttnode);
                     }
@@ -351,13 +365,11 @@ public class MainRunner {
             // TODO Auto-generated catch block
             e.printStackTrace();
         }
-        tree = new JadeTree(root);
-        tree.processRoot();
         String outfile = args[2];
-        FileWriter fw;
+        BufferedWriter fw;
         try {
-            fw = new FileWriter(outfile);
-            fw.write(tree.getRoot().getNewick(false) + ";");
+            fw = new BufferedWriter(new FileWriter(outfile));
+            tree.writeNewick(tree.getRoot(), fw, false);
             fw.close();
         } catch (IOException e) {
             // TODO Auto-generated catch block
@@ -430,17 +442,13 @@ public class MainRunner {
     
     
     private JadeTree readNewick (String newickFile) {
-        String inputNewick = "";
         System.out.println("Reading tree from file: " + newickFile);
-        try {
-            BufferedReader br = new BufferedReader(new FileReader(newickFile));
-            inputNewick =  br.readLine();
-            br.close();
-        } catch (IOException ioe) {}
-        
-        TreeReader tr = new TreeReader();
-        JadeTree tree = tr.readTree(inputNewick);
-        return tree;
+        try (NewickParser np = NewickParser.fromFile(newickFile)) {
+            return np.readTree();
+        } catch (IOException ioe) {
+            System.err.println("Could not read the newick file '" + newickFile + "': " + ioe.getMessage());
+            return null;
+        }
     }
     
     
@@ -468,11 +476,214 @@ public class MainRunner {
     }
     
     
+    /**
+     * Regression benchmark for deep trees: a caterpillar ((((ott0,ott1)n1,ott2)n2,...)nN of the given
+     * depth goes through the newick parser, the streaming ingest traversal, JadeTree construction,
+     * getNewick and descendant iteration and, if a (new) DB name is given, a bulk ingest, draft tree
+     * extraction and arguson generation. Each stage runs on a thread with a small stack
+     * (treemachine.bench_stack_kb, 256 by default), so it fails if any of them still recurses per level.
+     * @returns 0 if every stage passed, 1 otherwise
+     */
+    public int caterpillarBenchmark (String [] args) throws IOException {
+        if (args.length < 1 || args.length > 3) {
+            System.out.println("arguments should be: [depth [scratch_DB_name]]");
+            return 1;
+        }
+        final int depth = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+        final String graphName = args.length > 2 ? args[2] : null;
+        if (graphName != null && new File(graphName).exists()) {
+            System.out.println("\nError: the scratch graph '" + graphName + "' exists. Give a new one.");
+            return 1;
+        }
+        long stackSize = Long.getLong("treemachine.bench_stack_kb", 256) * 1024;
+        final String treeID = "caterpillar";
+        
+        // tree, annotations and taxonomy (the tips) in temp files
+        File dir = Files.createTempDirectory("caterpillar").toFile();
+        final File newickFile = new File(dir, "caterpillar.tre");
+        final File jsonFile = new File(dir, "annotations.json");
+        final File taxFile = new File(dir, "taxonomy.tsv");
+        try (Writer w = new BufferedWriter(new FileWriter(newickFile))) {
+            for (int i = 0; i < depth; i++) {
+                w.write('(');
+            }
+            w.write("ott0");
+            for (int i = 1; i <= depth; i++) {
+                w.write(",ott" + i + ")n" + i);
+            }
+            w.write(";\n");
+        }
+        try (Writer w = new BufferedWriter(new FileWriter(jsonFile))) {
+            w.write("{\"tree_id\": \"" + treeID + "\", \"root_ott_id\": -1, \"taxonomy_version\": \"bench\", "
+                + "\"filtered_flags\": \"\", \"sources\": [], \"source_id_map\": {}, \"nodes\": {}}\n");
+        }
+        try (Writer w = new BufferedWriter(new FileWriter(taxFile))) {
+            w.write("uid\t|\tparent_uid\t|\tname\t|\trank\t|\tsourceinfo\t|\tuniqname\t|\tflags\t|\n");
+            for (int i = 0; i <= depth; i++) {
+                w.write(i + "\t|\t\t|\tt" + i + "\t|\tspecies\t|\tbench:" + i + "\t|\t\t|\t\t|\n");
+            }
+        }
+        final int numNodes = 2 * depth + 1;
+        final int numTips = depth + 1;
+        final JadeTree[] tree = new JadeTree[1];
+        final String[] newick = new String[1];
+        
+        ArrayList<String> stages = new ArrayList<>();
+        ArrayList<Callable<String>> tasks = new ArrayList<>(); // each returns an error, or null if it passed
+        stages.add("parse");
+        tasks.add(new Callable<String>() {
+            @Override
+            public String call () throws Exception {
+                int n = 0;
+                try (NewickParser np = NewickParser.fromFile(newickFile.getPath())) {
+                    while (np.next() == NewickParser.NODE) {
+                        n++;
+                    }
+                }
+                return n == numNodes ? null : n + " nodes parsed";
+            }
+        });
+        stages.add("stream ingest traversal");
+        tasks.add(new Callable<String>() {
+            @Override
+            public String call () throws Exception {
+                final int[] counts = new int[2];
+                SynthTreeStreamIngest.Result res = SynthTreeStreamIngest.write(newickFile.getPath(), new SynthTreeStreamIngest.Sink() {
+                    @Override
+                    public long node (String otNodeID) {
+                        return counts[0]++;
+                    }
+                    @Override
+                    public void edge (long childID, long parentID, String childOTNodeID, int preorder, int postorder,
+                            int tipDescendants) {
+                        counts[1]++;
+                    }
+                });
+                return counts[0] == numNodes && counts[1] == numNodes - 1 && res.rootPostorder == numNodes - 1 ? null
+                    : counts[0] + " nodes and " + counts[1] + " edges written";
+            }
+        });
+        stages.add("JadeTree");
+        tasks.add(new Callable<String>() {
+            @Override
+            public String call () throws Exception {
+                try (NewickParser np = NewickParser.fromFile(newickFile.getPath())) {
+                    tree[0] = np.readTree();
+                }
+                return tree[0].getExternalNodeCount() == numTips ? null : tree[0].getExternalNodeCount() + " tips";
+            }
+        });
+        stages.add("getNewick");
+        tasks.add(new Callable<String>() {
+            @Override
+            public String call () throws Exception {
+                newick[0] = tree[0].getRoot().getNewick(false) + ";";
+                String expected;
+                try (BufferedReader br = new BufferedReader(new FileReader(newickFile))) {
+                    expected = br.readLine();
+                }
+                return expected.equals(newick[0]) ? null : "newick differs from the input";
+            }
+        });
+        stages.add("getDescendants");
+        tasks.add(new Callable<String>() {
+            @Override
+            public String call () throws Exception {
+                int n = tree[0].getRoot().getDescendantLeavesNumbers();
+                return n == numTips ? null : n + " leaves";
+            }
+        });
+        stages.add("CompactTree");
+        tasks.add(new Callable<String>() {
+            @Override
+            public String call () throws Exception {
+                CompactTree ct;
+                try (NewickParser np = NewickParser.fromFile(newickFile.getPath())) {
+                    ct = CompactTree.readNewick(np);
+                }
+                StringBuilder sb = new StringBuilder();
+                ct.writeNewick(ct.getRoot(), sb, false);
+                return ct.size() == numNodes && sb.toString().equals(newick[0]) ? null : "CompactTree newick differs";
+            }
+        });
+        if (graphName != null) {
+            stages.add("bulk ingest");
+            tasks.add(new Callable<String>() {
+                @Override
+                public String call () throws Exception {
+                    new BulkIngestSynthesisData(graphName).buildDB(newickFile.getPath(), jsonFile.getPath(), taxFile.getPath());
+                    return null;
+                }
+            });
+            stages.add("extract draft tree and arguson");
+            tasks.add(new Callable<String>() {
+                @Override
+                public String call () throws Exception {
+                    GraphExplorer ge = new GraphExplorer(graphName);
+                    try {
+                        Node root = ge.getSynthTreeRootNode(treeID);
+                        String extracted = ge.extractDraftTree(root, treeID, "id").getRoot().getNewick(false) + ";";
+                        if (!extracted.equals(newick[0])) {
+                            return "extracted newick differs from the input";
+                        }
+                        HashMap<String, Object> arguson = ge.getArgusonData(root, treeID, -1);
+                        return arguson.containsKey("children") ? null : "no arguson children";
+                    } finally {
+                        ge.shutdownDB();
+                    }
+                }
+            });
+        }
+        
+        int failed = 0;
+        for (int i = 0; i < tasks.size(); i++) {
+            final Callable<String> task = tasks.get(i);
+            final Object[] outcome = new Object[1];
+            Thread t = new Thread(null, new Runnable() {
+                @Override
+                public void run () {
+                    try {
+                        outcome[0] = task.call();
+                    } catch (Throwable e) {
+                        outcome[0] = e;
+                    }
+                }
+            }, "caterpillar-" + i, stackSize);
+            long start = System.nanoTime();
+            t.start();
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return 1;
+            }
+            double secs = (System.nanoTime() - start) / 1000000000.0;
+            if (outcome[0] == null) {
+                TaxonomyBulkLoader.report(stages.get(i), numNodes, "nodes", -1, secs);
+            } else {
+                failed++;
+                System.out.println("Stage '" + stages.get(i) + "' FAILED: " + (outcome[0] instanceof StackOverflowError
+                    ? "stack overflow (recursion per level)" : outcome[0]));
+            }
+        }
+        newickFile.delete();
+        jsonFile.delete();
+        taxFile.delete();
+        dir.delete();
+        System.out.println((tasks.size() - failed) + " of " + tasks.size() + " stages passed on a depth " + depth
+            + " caterpillar with " + stackSize / 1024 + " KB stacks.");
+        return failed == 0 ? 0 : 1;
+    }
+    
+    
     public static void printHelp() {
         System.out.println("==========================");
         System.out.println("usage: treemachine is run as:");
         System.out.println("");
-        System.out.println("ingestsynth newick_tree json_annotations tsv_taxonomy DB_name\n");
+        System.out.println("ingestsynth [--bulk] newick_tree json_annotations tsv_taxonomy DB_name\n");
+        System.out.println("converttaxonomy tsv_taxonomy newick_tree [labels_are_uids T|F]");
+        System.out.println("\t(labels with blanks or any of ()[],:;' are single-quoted, inner quotes doubled)\n");
+        System.out.println("caterpillarbench [depth [scratch_DB_name]]\n");
     }
     
     
@@ -511,6 +722,8 @@ public class MainRunner {
                 cmdReturnCode = mr.nodeInfo(args);
             } else if (command.compareTo("ingestsynth") == 0) {
                 cmdReturnCode = mr.ingestSynthesisData(args);
+            } else if (command.equals("caterpillarbench")) {
+                cmdReturnCode = mr.caterpillarBenchmark(args);
             } 
             
             // test function
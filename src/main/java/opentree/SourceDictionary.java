@@ -0,0 +1,148 @@
+package opentree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.neo4j.graphdb.Node;
+
+/**
+ * All sources (source trees and the taxonomy) of one synthetic tree, numbered: int id <-> source
+ * string (e.g. "pg_2594@tree6014") <-> parsed source_id_map record (git_sha, tree_id, study_id).
+ *
+ * Ids 0 .. n-1 are the tree's "annotation_source_table", so the int source ids stored in the
+ * typed edge annotations (see EdgeAnnotations) index straight into getSourceTable(). Sources that
+ * only appear in the source map node follow. For trees ingested before the table existed the ids
+ * simply follow the source map node.
+ *
+ * Built lazily, once per tree, from the metadata and source map nodes, and immutable afterwards
+ * (records are unmodifiable maps). Cached by GraphServiceContext; ingesting a synthetic tree
+ * invalidates the cached dictionary for that tree id.
+ */
+public class SourceDictionary {
+
+    private final String treeID;
+    private final String[] sources; // id -> source
+    private final String[] annotationSources; // prefix of `sources` referenced by edge annotations
+    private final HashMap<String, Integer> ids = new HashMap<>(); // source -> id
+    private final ArrayList<Map<String, String>> records = new ArrayList<>(); // id -> parsed record, or null
+    private final String[] studyIDs; // id -> study_id of the record, or null
+
+
+    /**
+     * @param treeID the synthetic tree identifier
+     * @param metaNode the metadata node of the tree
+     * @param sourceMapNode the source map node of the tree (property key = source, value = flattened record)
+     */
+    public SourceDictionary (String treeID, Node metaNode, Node sourceMapNode) {
+        this.treeID = treeID;
+        ArrayList<String> all = new ArrayList<>();
+        if (metaNode != null && metaNode.hasProperty(EdgeAnnotations.SOURCE_TABLE)) {
+            annotationSources = (String[]) metaNode.getProperty(EdgeAnnotations.SOURCE_TABLE);
+            for (String source : annotationSources) {
+                add(source, all);
+            }
+        } else {
+            annotationSources = null;
+        }
+        if (sourceMapNode != null) {
+            for (String source : sourceMapNode.getPropertyKeys()) {
+                add(source, all);
+            }
+        }
+        sources = all.toArray(new String[all.size()]);
+        studyIDs = new String[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            if (sourceMapNode != null && sourceMapNode.hasProperty(sources[i])) {
+                HashMap<String, String> rec = EdgeAnnotations.parseMap((String) sourceMapNode.getProperty(sources[i]));
+                records.add(Collections.unmodifiableMap(rec));
+                String studyID = rec.get("study_id");
+                if (studyID != null && !studyID.equals("null")) {
+                    studyIDs[i] = studyID;
+                }
+            } else {
+                records.add(null);
+            }
+        }
+    }
+
+
+    private void add (String source, ArrayList<String> all) {
+        if (!ids.containsKey(source)) {
+            ids.put(source, all.size());
+            all.add(source);
+        }
+    }
+
+
+    public String getTreeID () {
+        return treeID;
+    }
+
+
+    public int size () {
+        return sources.length;
+    }
+
+
+    /**
+     * @return the id of the source, or -1 if the tree has no such source
+     */
+    public int getID (String source) {
+        Integer id = ids.get(source);
+        return id == null ? -1 : id;
+    }
+
+
+    public String getSource (int id) {
+        return sources[id];
+    }
+
+
+    /**
+     * @return the parsed source_id_map record of the source, or null if it has none
+     */
+    public Map<String, String> getRecord (int id) {
+        return records.get(id);
+    }
+
+
+    /**
+     * @return the parsed source_id_map record of the source, or null if it has none
+     */
+    public Map<String, String> getRecord (String source) {
+        Integer id = ids.get(source);
+        return id == null ? null : records.get(id);
+    }
+
+
+    /**
+     * @return the study id of the source (from its record), or null if it has none
+     */
+    public String getStudyID (String source) {
+        Integer id = ids.get(source);
+        return id == null ? null : studyIDs[id];
+    }
+
+
+    /**
+     * @return the sources listed in the tree's source map node (i.e. the source_id_map keys)
+     */
+    public ArrayList<String> getMappedSources () {
+        ArrayList<String> res = new ArrayList<>();
+        for (int i = 0; i < sources.length; i++) {
+            if (records.get(i) != null) {
+                res.add(sources[i]);
+            }
+        }
+        return res;
+    }
+
+
+    /**
+     * @return the table that typed edge annotations index into, or null if the tree predates it
+     */
+    public String[] getSourceTable () {
+        return annotationSources;
+    }
+}
@@ -0,0 +1,97 @@
+package opentree;
+
+/**
+ * Per-node subtree statistics of one synthetic tree, as dense arrays indexed like its
+ * SynthTreeIndex: number of tips, number of internal nodes and height (edges to the deepest tip)
+ * of the subtree of every node, plus the node's depth. Computed in one pass over the index, so
+ * tip counts (for the root too) and size-limit checks need neither rel properties nor the
+ * metadata node.
+ *
+ * Built once per index (SynthTreeIndex.getStats) and immutable afterwards.
+ */
+public class SubtreeStats {
+
+    private final SynthTreeIndex index;
+    private final int[] numTips; // tips in the subtree; 1 for a tip
+    private final int[] numInternal; // internal nodes in the subtree, the node itself included
+    private final int[] height; // edges from the node to its deepest descendant tip; 0 for a tip
+
+
+    SubtreeStats (SynthTreeIndex index) {
+        this.index = index;
+        int n = index.size();
+        numTips = new int[n];
+        numInternal = new int[n];
+        height = new int[n];
+        // children have larger (preorder) ids, so each node is complete before it is added to its parent
+        for (int i = n - 1; i >= 0; i--) {
+            if (index.isTip(i)) {
+                numTips[i] = 1;
+            } else {
+                numInternal[i]++;
+            }
+            int p = index.getParent(i);
+            if (p != SynthTreeIndex.NO_NODE) {
+                numTips[p] += numTips[i];
+                numInternal[p] += numInternal[i];
+                if (height[p] < height[i] + 1) {
+                    height[p] = height[i] + 1;
+                }
+            }
+        }
+    }
+
+
+    public SynthTreeIndex getIndex () {
+        return index;
+    }
+
+
+    /**
+     * @return the number of tips in the subtree of the node (1 if it is a tip)
+     */
+    public int getNumTips (int id) {
+        return numTips[id];
+    }
+
+
+    /**
+     * @return the number of tips below the node, as stored in the `tip_descendants` rel property
+     *     at ingest (i.e. 0 for a tip)
+     */
+    public int getNumTipDescendants (int id) {
+        return index.isTip(id) ? 0 : numTips[id];
+    }
+
+
+    /**
+     * @return the number of internal nodes in the subtree of the node, itself included
+     */
+    public int getNumInternal (int id) {
+        return numInternal[id];
+    }
+
+
+    /**
+     * @return the number of edges between the node and its deepest descendant tip
+     */
+    public int getHeight (int id) {
+        return height[id];
+    }
+
+
+    /**
+     * @return the number of edges between the node and the root
+     */
+    public int getDepth (int id) {
+        return index.getDepth(id);
+    }
+
+
+    /**
+     * @return the largest depth of any node in the tree
+     */
+    public int getMaxDepth () {
+        return index.size() == 0 ? 0 : height[index.getRoot()];
+    }
+}
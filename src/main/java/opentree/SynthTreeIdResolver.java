@@ -0,0 +1,177 @@
+package opentree;
+
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import opentree.constants.NodeProperty;
+import org.neo4j.graphdb.Node;
+import org.opentree.graphdb.GraphDatabaseAgent;
+
+/**
+ * Resolves ott ids and node ids ("ott123", "mrcaott1ott2") to the dense ids of one synthetic
+ * tree's SynthTreeIndex in memory, instead of one legacy index query (IndexHits.getSingle) per id.
+ *
+ * Built once per tree (by GraphServiceContext, on first use) by reading the `tax_uid` and
+ * `ot_node_id` properties of the tree's nodes into Trove open-addressing maps: ott id -> dense id,
+ * and node id -> dense id for the nodes whose id is not simply "ott" + their ott id (those
+ * resolve through the ott id map). An id that does not resolve is not in the tree, whether or
+ * not the graph has a node for it.
+ *
+ * The maps are only read after construction, so lookups are safe from any number of threads;
+ * large batches are resolved in parallel on the common fork-join pool.
+ */
+public class SynthTreeIdResolver {
+
+    // batches below this are resolved on the calling thread, and parallel tasks split down to it
+    private static final int PARALLEL_GRAIN = 4096;
+
+    private final SynthTreeIndex index;
+    private final TLongIntHashMap ottIDs; // ott id -> dense id
+    private final TObjectIntHashMap<String> nodeIDs; // other (mrca) node ids -> dense id
+
+
+    public SynthTreeIdResolver (SynthTreeIndex index, GraphDatabaseAgent graphDb) {
+        long start = System.nanoTime();
+        this.index = index;
+        int n = index.size();
+        ottIDs = new TLongIntHashMap(n, 0.5f, -1L, SynthTreeIndex.NO_NODE);
+        nodeIDs = new TObjectIntHashMap<>(n / 4 + 16, 0.5f, SynthTreeIndex.NO_NODE);
+        for (int i = 0; i < n; i++) {
+            Node nd = graphDb.getNodeById(index.getGraphNodeID(i));
+            long ottID = -1;
+            if (nd.hasProperty(NodeProperty.TAX_UID.propertyName)) {
+                ottID = Long.valueOf((String) nd.getProperty(NodeProperty.TAX_UID.propertyName));
+                ottIDs.put(ottID, i);
+            }
+            if (nd.hasProperty(NodeProperty.OT_NODE_ID.propertyName)) {
+                String nodeID = (String) nd.getProperty(NodeProperty.OT_NODE_ID.propertyName);
+                if (ottID < 0 || parseOttNodeID(nodeID) != ottID) {
+                    nodeIDs.put(nodeID, i);
+                }
+            }
+        }
+        System.out.println("Built id resolver for synthetic tree '" + index.getTreeID() + "' ("
+            + ottIDs.size() + " ott ids, " + nodeIDs.size() + " other node ids) in "
+            + (System.nanoTime() - start) / 1000000000.0 + " seconds.");
+    }
+
+
+    // "ott123" -> 123; -1 for anything else (including "ott0123", which is not a canonical id)
+    private static long parseOttNodeID (String nodeID) {
+        int len = nodeID.length();
+        if (len < 4 || len > 21 || !nodeID.startsWith("ott") || nodeID.charAt(3) == '0') {
+            return -1;
+        }
+        long res = 0;
+        for (int i = 3; i < len; i++) {
+            char c = nodeID.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            res = res * 10 + (c - '0'); // at most 18 digits, so no overflow
+        }
+        return res;
+    }
+
+
+    public SynthTreeIndex getIndex () {
+        return index;
+    }
+
+
+    /**
+     * @return the dense id of the taxon in the tree, or SynthTreeIndex.NO_NODE
+     */
+    public int resolveOttID (long ottID) {
+        return ottIDs.get(ottID);
+    }
+
+
+    /**
+     * @return the dense id of the node in the tree, or SynthTreeIndex.NO_NODE
+     */
+    public int resolveNodeID (String nodeID) {
+        int res = resolveExactNodeID(nodeID);
+        if (res == SynthTreeIndex.NO_NODE) {
+            // the legacy index is case-insensitive
+            String lower = nodeID.toLowerCase();
+            if (!lower.equals(nodeID)) {
+                res = resolveExactNodeID(lower);
+            }
+        }
+        return res;
+    }
+
+
+    private int resolveExactNodeID (String nodeID) {
+        long ottID = parseOttNodeID(nodeID);
+        if (ottID >= 0) {
+            int res = ottIDs.get(ottID);
+            if (res != SynthTreeIndex.NO_NODE) {
+                return res;
+            }
+        }
+        return nodeIDs.get(nodeID);
+    }
+
+
+    /**
+     * Resolve a batch of ids, in parallel when it is large. Each result is written to the
+     * position of its id, so the output does not depend on scheduling.
+     * @param ottIDs ott ids, or null
+     * @param nodeIDs node ids, or null
+     * @return {dense ids of ottIDs, dense ids of nodeIDs}, positionally; SynthTreeIndex.NO_NODE for
+     *     ids that are not in the tree. A null input gives an empty array.
+     */
+    public int[][] resolveAll (long[] ottIDs, String[] nodeIDs) {
+        int[] ottRes = new int[ottIDs == null ? 0 : ottIDs.length];
+        int[] nodeRes = new int[nodeIDs == null ? 0 : nodeIDs.length];
+        ResolveTask task = new ResolveTask(ottIDs, nodeIDs, ottRes, nodeRes, 0, ottRes.length + nodeRes.length);
+        if (ottRes.length + nodeRes.length < PARALLEL_GRAIN) {
+            task.compute();
+        } else {
+            ForkJoinPool.commonPool().invoke(task);
+        }
+        return new int[][] {ottRes, nodeRes};
+    }
+
+
+    // resolves positions [from, to) of the concatenation ottIDs ++ nodeIDs
+    private class ResolveTask extends RecursiveAction {
+
+        private final long[] ottIDs;
+        private final String[] nodeIDs;
+        private final int[] ottRes;
+        private final int[] nodeRes;
+        private final int from;
+        private final int to;
+
+        ResolveTask (long[] ottIDs, String[] nodeIDs, int[] ottRes, int[] nodeRes, int from, int to) {
+            this.ottIDs = ottIDs;
+            this.nodeIDs = nodeIDs;
+            this.ottRes = ottRes;
+            this.nodeRes = nodeRes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute () {
+            if (to - from > PARALLEL_GRAIN) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ResolveTask(ottIDs, nodeIDs, ottRes, nodeRes, from, mid),
+                    new ResolveTask(ottIDs, nodeIDs, ottRes, nodeRes, mid, to));
+                return;
+            }
+            int nOtt = ottRes.length;
+            for (int i = from; i < to; i++) {
+                if (i < nOtt) {
+                    ottRes[i] = resolveOttID(ottIDs[i]);
+                } else {
+                    nodeRes[i - nOtt] = resolveNodeID(nodeIDs[i - nOtt]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package opentree;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TLongIntHashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import opentree.constants.RelProperty;
+import opentree.constants.RelType;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+
+/**
+ * In-memory topology of a single synthetic tree, so that read services do not have to walk
+ * SYNTHCHILDOF relationships (and string-compare their `name` property) on every request.
+ *
+ * Nodes are numbered densely in preorder: the root is 0, every parent has a smaller id than
+ * its children, and the subtree of node i is the contiguous id range [i, getSubtreeEnd(i)].
+ * Children are stored in CSR form (childStart/children). When the SYNTHCHILDOF rels carry the
+ * preorder labels written at ingest, children are ordered by them, so that dense ids equal the
+ * stored labels; otherwise they come in the order neo4j returns the relationships.
+ *
+ * Indexes are built once per synth tree id (on first use) and shared by all requests through
+ * GraphServiceContext.
+ */
+public class SynthTreeIndex {
+
+    public static final int NO_NODE = -1;
+
+    private static final Comparator<Relationship> BY_PREORDER = new Comparator<Relationship>() {
+        @Override
+        public int compare (Relationship a, Relationship b) {
+            return Integer.compare((Integer) a.getProperty(RelProperty.PREORDER.propertyName),
+                (Integer) b.getProperty(RelProperty.PREORDER.propertyName));
+        }
+    };
+
+    private final String treeID;
+    private final long[] graphNodeIds; // dense id -> neo4j node id
+    private final TLongIntHashMap denseIds; // neo4j node id -> dense id
+    private final int[] parent;
+    private final int[] childStart; // children of i are children[childStart[i] .. childStart[i+1])
+    private final int[] children;
+    private final int[] depth; // edges from the root
+    private final int[] subtreeEnd; // last preorder id in the subtree of i
+    private SynthTreeLCA lca; // built on first mrca query
+    private SubtreeStats stats; // built on first use
+
+
+    private SynthTreeIndex (String treeID, long[] graphNodeIds, int[] parent) {
+        this.treeID = treeID;
+        this.graphNodeIds = graphNodeIds;
+        this.parent = parent;
+        int n = graphNodeIds.length;
+
+        denseIds = new TLongIntHashMap(n * 2, 0.5f, -1L, NO_NODE);
+        for (int i = 0; i < n; i++) {
+            denseIds.put(graphNodeIds[i], i);
+        }
+
+        // CSR children. parents precede children, so filling in id order keeps sibling order
+        childStart = new int[n + 1];
+        for (int i = 1; i < n; i++) {
+            childStart[parent[i] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            childStart[i + 1] += childStart[i];
+        }
+        children = new int[Math.max(n - 1, 0)];
+        int[] fill = new int[n];
+        for (int i = 1; i < n; i++) {
+            int p = parent[i];
+            children[childStart[p] + fill[p]++] = i;
+        }
+
+        depth = new int[n];
+        for (int i = 1; i < n; i++) {
+            depth[i] = depth[parent[i]] + 1;
+        }
+        subtreeEnd = new int[n];
+        for (int i = n - 1; i >= 0; i--) {
+            if (subtreeEnd[i] < i) {
+                subtreeEnd[i] = i;
+            }
+            if (i > 0 && subtreeEnd[parent[i]] < subtreeEnd[i]) {
+                subtreeEnd[parent[i]] = subtreeEnd[i];
+            }
+        }
+    }
+
+
+    /**
+     * Read the synthetic tree below rootNode into a new index. Preorder, iterative (synth trees
+     * can be very deep), and touches each SYNTHCHILDOF relationship exactly once.
+     */
+    public static SynthTreeIndex build (String treeID, Node rootNode) {
+        long start = System.nanoTime();
+        TLongArrayList nodeIds = new TLongArrayList();
+        TIntArrayList parents = new TIntArrayList();
+
+        ArrayList<Node> stack = new ArrayList<>();
+        TIntArrayList stackParents = new TIntArrayList();
+        ArrayList<Relationship> curChildren = new ArrayList<>();
+        stack.add(rootNode);
+        stackParents.add(NO_NODE);
+        while (!stack.isEmpty()) {
+            int top = stack.size() - 1;
+            Node curNode = stack.remove(top);
+            int curParent = stackParents.removeAt(top);
+            int curID = nodeIds.size();
+            nodeIds.add(curNode.getId());
+            parents.add(curParent);
+
+            curChildren.clear();
+            boolean labelled = true;
+            for (Relationship rel : curNode.getRelationships(Direction.INCOMING, RelType.SYNTHCHILDOF)) {
+                if (treeID.equals(String.valueOf(rel.getProperty("name")))) {
+                    curChildren.add(rel);
+                    labelled &= rel.hasProperty(RelProperty.PREORDER.propertyName);
+                }
+            }
+            if (labelled && curChildren.size() > 1) {
+                Collections.sort(curChildren, BY_PREORDER);
+            }
+            // push in reverse so the first child gets the next preorder id
+            for (int i = curChildren.size() - 1; i >= 0; i--) {
+                stack.add(curChildren.get(i).getStartNode());
+                stackParents.add(curID);
+            }
+        }
+        SynthTreeIndex index = new SynthTreeIndex(treeID, nodeIds.toArray(), parents.toArray());
+        System.out.println("Indexed synthetic tree '" + treeID + "' (" + index.size() + " nodes) in "
+            + (System.nanoTime() - start) / 1000000000.0 + " seconds.");
+        return index;
+    }
+
+
+    /**
+     * @return the LCA engine for this tree, built once on first use
+     */
+    public synchronized SynthTreeLCA getLCA () {
+        if (lca == null) {
+            lca = new SynthTreeLCA(this);
+        }
+        return lca;
+    }
+
+
+    /**
+     * @return tip counts, heights etc. of all subtrees of this tree, computed once on first use
+     */
+    public synchronized SubtreeStats getStats () {
+        if (stats == null) {
+            stats = new SubtreeStats(this);
+        }
+        return stats;
+    }
+
+
+    public String getTreeID () {
+        return treeID;
+    }
+
+
+    public int size () {
+        return graphNodeIds.length;
+    }
+
+
+    public int getRoot () {
+        return 0;
+    }
+
+
+    /**
+     * @return the dense id for the neo4j node id, or NO_NODE if the node is not in this tree
+     */
+    public int getDenseID (long graphNodeId) {
+        return denseIds.get(graphNodeId);
+    }
+
+
+    public int getDenseID (Node nd) {
+        return denseIds.get(nd.getId());
+    }
+
+
+    public boolean contains (Node nd) {
+        return denseIds.containsKey(nd.getId());
+    }
+
+
+    public long getGraphNodeID (int id) {
+        return graphNodeIds[id];
+    }
+
+
+    /**
+     * @return the parent's dense id, or NO_NODE for the root
+     */
+    public int getParent (int id) {
+        return parent[id];
+    }
+
+
+    public int getChildCount (int id) {
+        return childStart[id + 1] - childStart[id];
+    }
+
+
+    public int getChild (int id, int i) {
+        return children[childStart[id] + i];
+    }
+
+
+    public boolean isTip (int id) {
+        return childStart[id + 1] == childStart[id];
+    }
+
+
+    public int getDepth (int id) {
+        return depth[id];
+    }
+
+
+    /**
+     * @return the preorder rank of the node; dense ids are assigned in preorder
+     */
+    public int getPreorder (int id) {
+        return id;
+    }
+
+
+    /**
+     * @return the postorder rank of the node. Nodes finished before `id` are those preceding it
+     *     in preorder that are not its ancestors, plus its own descendants.
+     */
+    public int getPostorder (int id) {
+        return subtreeEnd[id] - depth[id];
+    }
+
+
+    /**
+     * @return the largest preorder id in the subtree rooted at `id`
+     */
+    public int getSubtreeEnd (int id) {
+        return subtreeEnd[id];
+    }
+
+
+    /**
+     * @return true if a is an ancestor of b, or a == b
+     */
+    public boolean isAncestor (int a, int b) {
+        return a <= b && b <= subtreeEnd[a];
+    }
+}
@@ -0,0 +1,183 @@
+package opentree;
+
+import java.util.Arrays;
+
+/**
+ * Constant-time lowest common ancestor queries over a SynthTreeIndex.
+ *
+ * Because dense ids are preorder ranks, for u < v the LCA of u and v is the parent of the
+ * shallowest node with id in (u, v] (or u itself, when u is an ancestor of v). That is a range
+ * minimum query over the depth array, answered here with a sparse table over blocks of
+ * BLOCK_SIZE ids plus linear scans inside the (at most two) partial blocks. This keeps the
+ * table small (n / BLOCK_SIZE * log n ints) compared to a full Euler tour sparse table, which
+ * would be several hundred MB for the full synthetic tree.
+ *
+ * The MRCA of any set of nodes is the LCA of the nodes with the smallest and largest preorder
+ * rank, so an MRCA over k nodes costs O(k) plus a single query.
+ */
+public class SynthTreeLCA {
+
+    private static final int BLOCK_SIZE = 32;
+
+    private final SynthTreeIndex index;
+    private final int[][] blockTable; // blockTable[k][b] = shallowest id in blocks b .. b + 2^k - 1
+
+
+    public SynthTreeLCA (SynthTreeIndex index) {
+        this.index = index;
+        int n = index.size();
+        int nBlocks = (n + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int levels = 1;
+        while ((1 << levels) <= nBlocks) {
+            levels++;
+        }
+        blockTable = new int[levels][];
+        blockTable[0] = new int[nBlocks];
+        for (int b = 0; b < nBlocks; b++) {
+            blockTable[0][b] = scan(b * BLOCK_SIZE, Math.min(n, (b + 1) * BLOCK_SIZE) - 1);
+        }
+        for (int k = 1; k < levels; k++) {
+            int span = 1 << (k - 1);
+            int len = nBlocks - (1 << k) + 1;
+            blockTable[k] = new int[len];
+            for (int b = 0; b < len; b++) {
+                blockTable[k][b] = shallower(blockTable[k - 1][b], blockTable[k - 1][b + span]);
+            }
+        }
+    }
+
+
+    /**
+     * @return the dense id of the lowest common ancestor of dense ids a and b
+     */
+    public int lca (int a, int b) {
+        if (a == b) {
+            return a;
+        }
+        if (a > b) {
+            int t = a;
+            a = b;
+            b = t;
+        }
+        if (b <= index.getSubtreeEnd(a)) { // a is an ancestor of b
+            return a;
+        }
+        return index.getParent(shallowest(a + 1, b));
+    }
+
+
+    /**
+     * @param ids dense ids; entries equal to SynthTreeIndex.NO_NODE are skipped
+     * @return the dense id of the mrca of all ids, or SynthTreeIndex.NO_NODE if there were none
+     */
+    public int mrca (int[] ids) {
+        int lo = Integer.MAX_VALUE;
+        int hi = SynthTreeIndex.NO_NODE;
+        for (int id : ids) {
+            if (id == SynthTreeIndex.NO_NODE) {
+                continue;
+            }
+            if (id < lo) {
+                lo = id;
+            }
+            if (id > hi) {
+                hi = id;
+            }
+        }
+        if (hi == SynthTreeIndex.NO_NODE) {
+            return SynthTreeIndex.NO_NODE;
+        }
+        return lca(lo, hi);
+    }
+
+
+    /**
+     * The minimal subtree induced by a set of nodes (a.k.a. virtual or auxiliary tree): the query
+     * nodes plus the LCAs of every pair of queries that are adjacent in preorder, which is exactly
+     * the set of all pairwise LCAs. O(k log k) for k queries.
+     * @param ids dense ids; entries equal to SynthTreeIndex.NO_NODE are skipped
+     * @return the induced tree, nodes in preorder
+     */
+    public InducedSubtree induce (int[] ids) {
+        int[] query = sortedUnique(ids, ids.length);
+        int k = query.length;
+        int[] withLCAs = Arrays.copyOf(query, k + Math.max(k - 1, 0));
+        for (int i = 0; i + 1 < k; i++) {
+            withLCAs[k + i] = lca(query[i], query[i + 1]);
+        }
+        int[] nodes = sortedUnique(withLCAs, withLCAs.length);
+
+        // walking in preorder, the parent of each node is the closest ancestor still on the stack
+        int[] parents = new int[nodes.length];
+        int[] stack = new int[nodes.length];
+        int top = -1;
+        for (int i = 0; i < nodes.length; i++) {
+            while (top >= 0 && index.getSubtreeEnd(nodes[stack[top]]) < nodes[i]) {
+                top--;
+            }
+            parents[i] = top >= 0 ? stack[top] : -1;
+            stack[++top] = i;
+        }
+        return new InducedSubtree(nodes, parents);
+    }
+
+
+    /**
+     * Result of induce(): nodes[i] is a dense id, parents[i] the position in `nodes` of its
+     * parent in the induced tree (-1 for the root, which is nodes[0]).
+     */
+    public static class InducedSubtree {
+        public final int[] nodes;
+        public final int[] parents;
+
+        InducedSubtree (int[] nodes, int[] parents) {
+            this.nodes = nodes;
+            this.parents = parents;
+        }
+    }
+
+
+    private static int[] sortedUnique (int[] ids, int len) {
+        int[] sorted = Arrays.copyOf(ids, len);
+        Arrays.sort(sorted);
+        int n = 0;
+        for (int i = 0; i < len; i++) {
+            if (sorted[i] != SynthTreeIndex.NO_NODE && (n == 0 || sorted[n - 1] != sorted[i])) {
+                sorted[n++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, n);
+    }
+
+
+    // id of minimum depth in [from, to]
+    private int shallowest (int from, int to) {
+        int fromBlock = from / BLOCK_SIZE;
+        int toBlock = to / BLOCK_SIZE;
+        if (toBlock - fromBlock < 2) {
+            return scan(from, to);
+        }
+        int best = shallower(scan(from, (fromBlock + 1) * BLOCK_SIZE - 1), scan(toBlock * BLOCK_SIZE, to));
+        int lo = fromBlock + 1;
+        int hi = toBlock - 1;
+        int k = 31 - Integer.numberOfLeadingZeros(hi - lo + 1);
+        best = shallower(best, blockTable[k][lo]);
+        return shallower(best, blockTable[k][hi - (1 << k) + 1]);
+    }
+
+
+    private int scan (int from, int to) {
+        int best = from;
+        for (int i = from + 1; i <= to; i++) {
+            if (index.getDepth(i) < index.getDepth(best)) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+
+    private int shallower (int a, int b) {
+        return index.getDepth(b) < index.getDepth(a) ? b : a;
+    }
+}
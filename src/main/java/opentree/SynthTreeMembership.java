@@ -0,0 +1,80 @@
+package opentree;
+
+import java.util.BitSet;
+import org.neo4j.graphdb.Node;
+
+/**
+ * Which graph nodes are in one synthetic tree, as a bitset over neo4j node ids: a membership test
+ * is one bit lookup instead of iterating the node's SYNTHCHILDOF rels and comparing their names.
+ *
+ * Written at ingest as a long[] on the tree's metadata node (MEMBER_BITS; about 1 bit per node
+ * in the db, so a few MB at most) and loaded on demand by GraphServiceContext. For trees ingested
+ * before that it is derived from the SynthTreeIndex instead.
+ */
+public class SynthTreeMembership {
+
+    public static final String MEMBER_BITS = "member_bits";
+
+    private final BitSet members;
+
+
+    private SynthTreeMembership (BitSet members) {
+        this.members = members;
+    }
+
+
+    /**
+     * @return the membership stored on the metadata node, or null if there is none
+     */
+    public static SynthTreeMembership load (Node metaNode) {
+        if (metaNode == null || !metaNode.hasProperty(MEMBER_BITS)) {
+            return null;
+        }
+        return new SynthTreeMembership(BitSet.valueOf((long[]) metaNode.getProperty(MEMBER_BITS)));
+    }
+
+
+    /**
+     * @return the membership of the nodes of an in-memory index, or null if a node id is too large
+     */
+    public static SynthTreeMembership fromIndex (SynthTreeIndex index) {
+        BitSet members = new BitSet();
+        for (int i = 0; i < index.size(); i++) {
+            if (!set(members, index.getGraphNodeID(i))) {
+                return null;
+            }
+        }
+        return new SynthTreeMembership(members);
+    }
+
+
+    /**
+     * Add a node id to a bitset being collected at ingest.
+     * @return false if the id is too large for a bitset (> Integer.MAX_VALUE); nothing is set then
+     */
+    public static boolean set (BitSet members, long graphNodeID) {
+        if (graphNodeID > Integer.MAX_VALUE) {
+            return false;
+        }
+        members.set((int) graphNodeID);
+        return true;
+    }
+
+
+    /**
+     * Store the bitset collected at ingest on the tree's metadata node.
+     */
+    public static void store (Node metaNode, BitSet members) {
+        metaNode.setProperty(MEMBER_BITS, members.toLongArray());
+    }
+
+
+    public boolean contains (long graphNodeID) {
+        return graphNodeID <= Integer.MAX_VALUE && members.get((int) graphNodeID);
+    }
+
+
+    public boolean contains (Node nd) {
+        return contains(nd.getId());
+    }
+}
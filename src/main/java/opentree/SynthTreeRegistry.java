@@ -0,0 +1,124 @@
+package opentree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.graphdb.index.IndexHits;
+
+/**
+ * The synthetic trees in the database: their ids (sorted, so the last is the most recent) and
+ * their metadata and source map nodes. Resolved once with a single index query instead of on
+ * every request. Held by GraphServiceContext; ingesting a tree invalidates it so the next lookup
+ * reloads.
+ *
+ * Hit/miss counters are kept for monitoring (see getMetrics).
+ */
+public class SynthTreeRegistry {
+
+    private final Index<Node> synthMetaIndex;
+    private final Index<Node> sourceMapIndex;
+    private ArrayList<String> treeIDs; // sorted; null until loaded
+    private HashMap<String, Node> metaNodes;
+    private final HashMap<String, Node> sourceMapNodes = new HashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong reloads = new AtomicLong();
+
+
+    public SynthTreeRegistry (Index<Node> synthMetaIndex, Index<Node> sourceMapIndex) {
+        this.synthMetaIndex = synthMetaIndex;
+        this.sourceMapIndex = sourceMapIndex;
+    }
+
+
+    /**
+     * Forget the loaded trees; the next lookup queries the indexes again.
+     */
+    public synchronized void invalidate () {
+        treeIDs = null;
+        metaNodes = null;
+        sourceMapNodes.clear();
+    }
+
+
+    // everything in the synth metadata index, keyed by tree id
+    private synchronized void ensureLoaded () {
+        if (treeIDs != null) {
+            hits.incrementAndGet();
+            return;
+        }
+        misses.incrementAndGet();
+        reloads.incrementAndGet();
+        metaNodes = new HashMap<>();
+        IndexHits<Node> res = synthMetaIndex.query("name", "*");
+        for (Node hit : res) {
+            if (hit.hasProperty("tree_id")) {
+                metaNodes.put((String) hit.getProperty("tree_id"), hit);
+            }
+        }
+        res.close();
+        treeIDs = new ArrayList<>(metaNodes.keySet());
+        Collections.sort(treeIDs);
+    }
+
+
+    /**
+     * @return all synth tree ids, sorted (a copy)
+     */
+    public synchronized ArrayList<String> getTreeIDs () {
+        ensureLoaded();
+        return new ArrayList<>(treeIDs);
+    }
+
+
+    /**
+     * @return the most recent synth tree id (last in sort order), or null if there are none
+     */
+    public synchronized String getMostRecentTreeID () {
+        ensureLoaded();
+        return treeIDs.isEmpty() ? null : treeIDs.get(treeIDs.size() - 1);
+    }
+
+
+    /**
+     * @return the metadata node of the synth tree, or null if there is no such tree
+     */
+    public synchronized Node getMetaNode (String treeID) {
+        ensureLoaded();
+        return metaNodes.get(treeID);
+    }
+
+
+    /**
+     * @return the source map node of the synth tree, or null if there is none
+     */
+    public synchronized Node getSourceMapNode (String treeID) {
+        if (sourceMapNodes.containsKey(treeID)) {
+            hits.incrementAndGet();
+            return sourceMapNodes.get(treeID);
+        }
+        misses.incrementAndGet();
+        IndexHits<Node> res = sourceMapIndex.query("name", treeID);
+        Node sourceMapNode = res.hasNext() ? res.next() : null;
+        res.close();
+        sourceMapNodes.put(treeID, sourceMapNode);
+        return sourceMapNode;
+    }
+
+
+    /**
+     * @return lookup counts: "hits" (answered from memory), "misses" (needed an index query)
+     *     and "reloads" (full reloads of the tree list)
+     */
+    public HashMap<String, Object> getMetrics () {
+        HashMap<String, Object> res = new HashMap<>();
+        res.put("hits", hits.get());
+        res.put("misses", misses.get());
+        res.put("reloads", reloads.get());
+        return res;
+    }
+}
@@ -0,0 +1,127 @@
+package opentree;
+
+import jade.tree.NewickParser;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import opentree.exceptions.TreeIngestException;
+
+/**
+ * Event-based ingest of a synthesis newick: nodes are written to the store as the parser closes
+ * them (postorder), and the edges to a node's children when the node itself closes. Only the
+ * children of still-open nodes are kept, on an explicit stack with their graph ids, interval labels
+ * and running tip counts, so memory is O(open nodes and their children) rather than O(tree), no
+ * JadeTree is built, and the tip count of every node costs O(1).
+ *
+ * The store side is a Sink, so the transactional (IngestSynthesisData) and batch-inserter
+ * (BulkIngestSynthesisData) ingests share the traversal. Only the first tree of the file is read.
+ */
+class SynthTreeStreamIngest {
+
+    /**
+     * Where the nodes and edges of the tree go.
+     */
+    interface Sink {
+        /**
+         * Create (or look up, for taxa) the graph node of a tree node.
+         * @return its graph node id
+         */
+        long node (String otNodeID) throws TreeIngestException;
+
+        /**
+         * Create the SYNTHCHILDOF edge from a child to its parent.
+         * @param tipDescendants tips below the child; 0 for a tip, as in the `tip_descendants` rel property
+         */
+        void edge (long childID, long parentID, String childOTNodeID, int preorder, int postorder,
+            int tipDescendants) throws TreeIngestException;
+    }
+
+
+    /**
+     * What the ingest found out about the tree as a whole.
+     */
+    static class Result {
+        long rootID; // graph node id of the newick root
+        String rootOTNodeID;
+        int rootPreorder;
+        int rootPostorder;
+        int numNodes;
+    }
+
+
+    /**
+     * First pass: the ott ids (without the "ott" prefix) of the taxa in the tree, so the taxonomy
+     * can be filtered before the tree is written.
+     */
+    static HashSet<String> collectOTTIDs (String newickFile) throws IOException {
+        HashSet<String> ottIDs = new HashSet<>();
+        try (NewickParser np = NewickParser.fromFile(newickFile)) {
+            while (np.next() == NewickParser.NODE) {
+                String str = np.getLabel();
+                if (str.startsWith("ott")) {
+                    ottIDs.add(str.replace("ott", ""));
+                }
+            }
+        }
+        System.out.println("Collected " + ottIDs.size() + " total ottIDs.");
+        return ottIDs;
+    }
+
+
+    /**
+     * Second pass: write the tree through the sink.
+     */
+    static Result write (String newickFile, Sink sink) throws IOException, TreeIngestException {
+        // closed nodes whose parent is still open, in newick order
+        long[] gid = new long[64];
+        int[] pre = new int[64];
+        int[] post = new int[64];
+        int[] tips = new int[64]; // 1 for a tip
+        boolean[] isTip = new boolean[64];
+        String[] label = new String[64];
+        int top = 0;
+        int nextPost = 0;
+
+        try (NewickParser np = NewickParser.fromFile(newickFile)) {
+            int ev;
+            while ((ev = np.next()) == NewickParser.NODE) {
+                String otNodeID = np.getLabel();
+                long id = sink.node(otNodeID);
+                int k = np.getNumChildren();
+                int ntips = k == 0 ? 1 : 0;
+                for (int i = top - k; i < top; i++) {
+                    sink.edge(gid[i], id, label[i], pre[i], post[i], isTip[i] ? 0 : tips[i]);
+                    ntips += tips[i];
+                    label[i] = null;
+                }
+                top -= k;
+                if (top == gid.length) {
+                    int n = top * 2;
+                    gid = Arrays.copyOf(gid, n);
+                    pre = Arrays.copyOf(pre, n);
+                    post = Arrays.copyOf(post, n);
+                    tips = Arrays.copyOf(tips, n);
+                    isTip = Arrays.copyOf(isTip, n);
+                    label = Arrays.copyOf(label, n);
+                }
+                gid[top] = id;
+                pre[top] = np.getID();
+                post[top] = nextPost++;
+                tips[top] = ntips;
+                isTip[top] = k == 0;
+                label[top] = otNodeID;
+                top++;
+            }
+            if (ev != NewickParser.TREE_END) {
+                throw new IOException("No tree in the newick file '" + newickFile + "'.");
+            }
+        }
+        Result res = new Result();
+        res.rootID = gid[0];
+        res.rootOTNodeID = label[0];
+        res.rootPreorder = pre[0];
+        res.rootPostorder = post[0];
+        res.numNodes = nextPost;
+        return res;
+    }
+}
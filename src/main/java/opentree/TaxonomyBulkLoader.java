@@ -0,0 +1,292 @@
+package opentree;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import opentree.constants.NodeProperty;
+import org.neo4j.helpers.collection.MapUtil;
+import org.neo4j.unsafe.batchinsert.BatchInserter;
+import org.neo4j.unsafe.batchinsert.BatchInserterIndex;
+
+/**
+ * Fast taxonomy (OTT taxonomy.tsv) ingest.
+ *
+ * parse() memory-maps the file, splits it into chunks at line boundaries and parses the chunks on
+ * a thread pool. Fields are found by scanning bytes for '|', and only the uid is decoded for lines
+ * that are not retained. Results come back in file order whatever the scheduling.
+ *
+ * insert() writes the parsed taxa as nodes, with their entries in the graphNamedNodes,
+ * graphTaxUIDNodes and graphOTTNodeIDNodes indexes, through neo4j's BatchInserter. That means no
+ * transactions and no log, so it is only for fresh databases (see BulkIngestSynthesisData). The
+ * transactional ingest (IngestSynthesisData) uses parse() only.
+ *
+ * Both stages print their throughput.
+ */
+public class TaxonomyBulkLoader {
+
+    private static final int CHUNK_SIZE = 32 * 1024 * 1024; // bytes per parse task (plus the end of the last line)
+
+    /**
+     * One retained taxonomy line. The parent uid and flags are not kept.
+     */
+    public static class Taxon {
+        public final String tid;
+        public final String name;
+        public final String rank;
+        public final String srce;
+        public final String uniqueName; // the name if the file has no unique name
+
+        Taxon (String tid, String name, String rank, String srce, String uniqueName) {
+            this.tid = tid;
+            this.name = name;
+            this.rank = rank;
+            this.srce = srce;
+            this.uniqueName = uniqueName;
+        }
+
+        public String getOTNodeID () {
+            return "ott" + tid;
+        }
+    }
+
+
+    /**
+     * The taxa retained by parse(), in file order, with the counts of the stage.
+     */
+    public static class ParseResult {
+        public final ArrayList<Taxon> taxa = new ArrayList<>();
+        public long numLines;
+        public long numBytes;
+        public double seconds;
+    }
+
+
+    // result of one chunk
+    private static class Chunk {
+        final ArrayList<Taxon> taxa = new ArrayList<>();
+        long numLines;
+    }
+
+
+    /**
+     * Parse a taxonomy tsv in parallel.
+     * @param fileName the taxonomy.tsv
+     * @param keep uids of the taxa to retain (e.g. those in the synthetic tree), or null for all
+     * @param nThreads parse threads
+     */
+    public static ParseResult parse (String fileName, final Set<String> keep, int nThreads) throws IOException {
+        long start = System.nanoTime();
+        ParseResult res = new ParseResult();
+        try (FileChannel ch = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            res.numBytes = ch.size();
+            ArrayList<Long> bounds = chunkBounds(ch);
+            ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, nThreads));
+            try {
+                ArrayList<Future<Chunk>> parts = new ArrayList<>();
+                for (int i = 0; i + 1 < bounds.size(); i++) {
+                    final MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, bounds.get(i),
+                        bounds.get(i + 1) - bounds.get(i));
+                    parts.add(pool.submit(new Callable<Chunk>() {
+                        @Override
+                        public Chunk call () {
+                            return parseChunk(buf, keep);
+                        }
+                    }));
+                }
+                for (Future<Chunk> part : parts) {
+                    Chunk chunk = part.get();
+                    res.taxa.addAll(chunk.taxa);
+                    res.numLines += chunk.numLines;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            } finally {
+                pool.shutdown();
+            }
+        }
+        res.seconds = (System.nanoTime() - start) / 1000000000.0;
+        report("parse", res.numLines, "lines", res.numBytes, res.seconds);
+        System.out.println("Read " + res.numLines + " taxa; retained " + res.taxa.size() + ".");
+        return res;
+    }
+
+
+    // chunk start offsets, each just after a newline, plus the file size
+    private static ArrayList<Long> chunkBounds (FileChannel ch) throws IOException {
+        long size = ch.size();
+        ArrayList<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long pos = CHUNK_SIZE;
+        while (pos < size) {
+            // move pos past the next newline
+            boolean found = false;
+            while (!found && pos < size) {
+                probe.clear();
+                int n = ch.read(probe, pos);
+                if (n <= 0) {
+                    break;
+                }
+                for (int i = 0; i < n; i++) {
+                    if (probe.get(i) == '\n') {
+                        pos += i + 1;
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    pos += n;
+                }
+            }
+            if (pos >= size) {
+                break;
+            }
+            bounds.add(pos);
+            pos += CHUNK_SIZE;
+        }
+        bounds.add(size);
+        return bounds;
+    }
+
+
+    // lines are "uid\t|\tparent_uid\t|\tname\t|\trank\t|\tsourceinfo\t|\tuniqname\t|\tflags\t|"
+    private static Chunk parseChunk (ByteBuffer buf, Set<String> keep) {
+        Chunk chunk = new Chunk();
+        int limit = buf.limit();
+        int[] fieldStart = new int[7];
+        int[] fieldEnd = new int[7];
+        byte[] scratch = new byte[256];
+        int lineStart = 0;
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && buf.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int next = lineEnd + 1;
+            // split on '|'; the fields are trimmed below
+            int nFields = 0;
+            int s = lineStart;
+            for (int i = lineStart; i < lineEnd && nFields < 7; i++) {
+                if (buf.get(i) == '|') {
+                    fieldStart[nFields] = s;
+                    fieldEnd[nFields++] = i;
+                    s = i + 1;
+                }
+            }
+            if (nFields < 7 && s < lineEnd) { // last field without a trailing '|'
+                fieldStart[nFields] = s;
+                fieldEnd[nFields++] = lineEnd;
+            }
+            if (nFields == 0 || isBlank(buf, lineStart, lineEnd)) {
+                lineStart = next;
+                continue;
+            }
+            String tid = decode(buf, fieldStart[0], fieldEnd[0], scratch);
+            if (tid.startsWith("uid")) { // header
+                lineStart = next;
+                continue;
+            }
+            chunk.numLines++;
+            if (keep == null || keep.contains(tid)) {
+                if (nFields < 7) {
+                    throw new NoSuchElementException("The taxonomy file appears to be missing some fields.");
+                }
+                String name = decode(buf, fieldStart[2], fieldEnd[2], scratch);
+                String uniqueName = decode(buf, fieldStart[5], fieldEnd[5], scratch);
+                chunk.taxa.add(new Taxon(tid, name, decode(buf, fieldStart[3], fieldEnd[3], scratch),
+                    decode(buf, fieldStart[4], fieldEnd[4], scratch), "".equals(uniqueName) ? name : uniqueName));
+            }
+            lineStart = next;
+        }
+        return chunk;
+    }
+
+
+    private static boolean isBlank (ByteBuffer buf, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf.get(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    // the trimmed field as a (UTF-8) string
+    private static String decode (ByteBuffer buf, int from, int to, byte[] scratch) {
+        while (from < to && (buf.get(from) & 0xff) <= ' ') {
+            from++;
+        }
+        while (to > from && (buf.get(to - 1) & 0xff) <= ' ') {
+            to--;
+        }
+        int len = to - from;
+        byte[] bytes = len <= scratch.length ? scratch : new byte[len];
+        for (int i = 0; i < len; i++) {
+            bytes[i] = buf.get(from + i);
+        }
+        return new String(bytes, 0, len, StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * Write taxa as nodes (with their index entries) through a batch inserter.
+     * @return ot_node_id ("ott" + uid) -> new node id
+     */
+    public static HashMap<String, Long> insert (List<Taxon> taxa, BatchInserter inserter, BatchInserterIndex nameIndex,
+            BatchInserterIndex taxUIDIndex, BatchInserterIndex otNodeIDIndex) {
+        long start = System.nanoTime();
+        HashMap<String, Long> nodeIDs = new HashMap<>(taxa.size() * 2);
+        for (Taxon taxon : taxa) {
+            String otNodeID = taxon.getOTNodeID();
+            long id = inserter.createNode(MapUtil.map(
+                NodeProperty.OT_NODE_ID.propertyName, otNodeID,
+                NodeProperty.NAME.propertyName, taxon.name,
+                NodeProperty.TAX_UID.propertyName, taxon.tid,
+                NodeProperty.TAX_RANK.propertyName, taxon.rank,
+                NodeProperty.TAX_SOURCE.propertyName, taxon.srce,
+                NodeProperty.NAME_UNIQUE.propertyName, taxon.uniqueName));
+            nameIndex.add(id, MapUtil.map(NodeProperty.NAME.propertyName, taxon.name));
+            taxUIDIndex.add(id, MapUtil.map(NodeProperty.TAX_UID.propertyName, taxon.tid));
+            otNodeIDIndex.add(id, MapUtil.map(NodeProperty.OT_NODE_ID.propertyName, otNodeID));
+            nodeIDs.put(otNodeID, id);
+        }
+        report("taxonomy nodes", taxa.size(), "nodes", -1, (System.nanoTime() - start) / 1000000000.0);
+        return nodeIDs;
+    }
+
+
+    /**
+     * Print the throughput of an ingest stage.
+     * @param numBytes bytes processed, or negative if not meaningful for the stage
+     */
+    public static void report (String stage, long count, String unit, long numBytes, double seconds) {
+        double secs = Math.max(seconds, 1e-9);
+        String ret = "Stage '" + stage + "': " + count + " " + unit + " in " + seconds + " seconds ("
+            + Math.round(count / secs) + " " + unit + "/s";
+        if (numBytes >= 0) {
+            ret += ", " + Math.round(numBytes / secs / (1024 * 1024)) + " MB/s";
+        }
+        System.out.println(ret + ").");
+    }
+}
@@ -52,6 +52,12 @@ public enum RelProperty {
     /** The name used to identify this synthetic tree */
     NAME ("name", String.class),
     
+    /** Preorder rank of the child node within this synthetic tree (root is 0). Root labels are stored on the metadata node. */
+    PREORDER ("preorder", int.class),
+    
+    /** Postorder rank of the child node within this synthetic tree. With PREORDER, a is an ancestor of b iff pre(a) <= pre(b) and post(b) <= post(a). */
+    POSTORDER ("postorder", int.class),
+    
     /** The phylografter ids of the source trees supporting this synthetic rel. Format is <studyid>_<treeid> */
     SUPPORTING_SOURCES ("supporting_sources", String[].class);
     
@@ -0,0 +1,105 @@
+package opentree.plugins;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import opentree.GraphExplorer;
+import org.json.simple.JSONValue;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.server.rest.repr.BadInputException;
+
+/**
+ * Streaming version of tree_of_life_v3/subtree (newick only). The newick is written to the
+ * response as the synthetic tree is walked, so memory use does not depend on the size of the
+ * clade, and the response goes out with chunked transfer encoding.
+ *
+ * This is an unmanaged extension rather than a ServerPlugin, because plugins have to return a
+ * fully built Representation. To enable it, add to neo4j-server.properties:
+ *
+ *     org.neo4j.server.thirdparty_jaxrs_classes=opentree.plugins=/treemachine
+ *
+ * and then e.g.:
+ *
+ *     curl "http://localhost:7474/treemachine/v3/tree_of_life/subtree_stream?ott_id=770315"
+ *
+ * The tip limit is -Dtreemachine.max_tips_stream (no limit by default).
+ */
+@Path("/v3/tree_of_life")
+public class SubtreeStreamResource {
+
+    private final GraphDatabaseService graphDb;
+
+
+    public SubtreeStreamResource (@Context GraphDatabaseService graphDb) {
+        this.graphDb = graphDb;
+    }
+
+
+    @GET
+    @Path("/subtree_stream")
+    @Produces(MediaType.TEXT_PLAIN)
+    public Response subtree (@QueryParam("node_id") String nodeID,
+        @QueryParam("ott_id") Long ottID,
+        @QueryParam("label_format") @DefaultValue("name_and_id") String labFormat,
+        @QueryParam("height_limit") @DefaultValue("-1") int hLimit,
+        @QueryParam("include_all_node_labels") @DefaultValue("false") boolean idsForUnnamed) {
+
+        if ((nodeID == null) == (ottID == null)) {
+            return badRequest("Must provide exactly one of a \"node_id\" or \"ott_id\" argument.");
+        }
+        if (!labFormat.matches("name|id|name_and_id")) {
+            return badRequest("Invalid 'label_format' arg: '" + labFormat + "'. "
+                + "Valid formats: \"name\", \"id\", or \"name_and_id\" (default).");
+        }
+
+        // validate everything before the first byte goes out; after that errors can't change the status
+        final GraphExplorer ge = new GraphExplorer(graphDb);
+        final String synthTreeID = ge.getMostRecentSynthTreeID();
+        final Node qNode;
+        try {
+            qNode = tree_of_life_v3.getSubtreeStartNode(ge, synthTreeID, nodeID, ottID);
+            if (tree_of_life_v3.MAX_TIPS_STREAM >= 0) {
+                int nTips = ge.getSubtreeNumTips(synthTreeID, qNode, hLimit, tree_of_life_v3.MAX_TIPS_STREAM);
+                if (nTips > tree_of_life_v3.MAX_TIPS_STREAM) {
+                    throw new BadInputException(tree_of_life_v3.treeTooBigError(tree_of_life_v3.MAX_TIPS_STREAM));
+                }
+            }
+        } catch (BadInputException e) {
+            return badRequest(e.getMessage());
+        }
+
+        final String labelFormat = labFormat;
+        final int maxDepth = hLimit;
+        final boolean labelUnnamed = idsForUnnamed;
+        StreamingOutput stream = new StreamingOutput() {
+            @Override
+            public void write (OutputStream os) throws IOException {
+                Writer out = new BufferedWriter(new OutputStreamWriter(os, "UTF-8"), 1 << 16);
+                ge.writeDepthLimitedSubtreeNewick(synthTreeID, qNode, maxDepth, labelFormat, labelUnnamed, out, null);
+                out.flush();
+            }
+        };
+        return Response.ok(stream, MediaType.TEXT_PLAIN + "; charset=UTF-8").build();
+    }
+
+
+    private static Response badRequest (String message) {
+        HashMap<String, Object> body = new HashMap<>();
+        body.put("message", message);
+        return Response.status(Response.Status.BAD_REQUEST).type(MediaType.APPLICATION_JSON)
+            .entity(JSONValue.toJSONString(body)).build();
+    }
+}
@@ -7,12 +7,14 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import jade.tree.deprecated.JadeTree;
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.Arrays;
 import java.util.HashSet;
 import opentree.GraphExplorer;
+import opentree.SynthTreeIndex;
 import org.opentree.exceptions.MultipleHitsException;
 import org.opentree.exceptions.TaxonNotFoundException;
 import org.opentree.exceptions.TreeNotFoundException;
@@ -30,6 +32,13 @@ import org.neo4j.server.rest.repr.BadInputException;
 // Graph of Life Services 
 public class tree_of_life_v3 extends ServerPlugin {
     
+    // tip limits for subtree requests. set with e.g. `wrapper.java.additional=-Dtreemachine.max_tips_newick=250000`
+    // in neo4j-wrapper.conf. the streaming endpoint (SubtreeStreamResource) has no limit unless one is given
+    static final int MAX_TIPS_NEWICK = Integer.getInteger("treemachine.max_tips_newick", 100000); // about 40 seconds
+    static final int MAX_TIPS_ARGUSON = Integer.getInteger("treemachine.max_tips_arguson", 25000); // splitting out since about 5x slower
+    static final int MAX_TIPS_STREAM = Integer.getInteger("treemachine.max_tips_stream", -1); // negative is no limit
+    static final int MAX_NODE_INFO_BATCH = Integer.getInteger("treemachine.max_node_info_batch", 10000); // ids per node_info_batch request
+    
     // NEW: add treeid as a optional argument, default to most recent. not used at present
     
     
@@ -44,11 +53,15 @@ public class tree_of_life_v3 extends ServerPlugin {
         
         @Description("Return a list of source studies.")
         @Parameter(name = "include_source_list", optional = true)
-        Boolean source_list
+        Boolean source_list,
+        
+        @Description("Return the hit and miss counts of the service caches.")
+        @Parameter(name = "include_cache_metrics", optional = true)
+        Boolean cache_metrics
         
         ) throws TaxonNotFoundException, MultipleHitsException, BadInputException {
 
-        return OTRepresentationConverter.convert(doAbout(graphDb, source_list));
+        return OTRepresentationConverter.convert(doAbout(graphDb, source_list, cache_metrics));
     }
 
     // There is no practical way to invoke a PluginTarget from
@@ -62,6 +75,12 @@ public class tree_of_life_v3 extends ServerPlugin {
 
     public HashMap<String, Object> doAbout(GraphDatabaseService graphDb, Boolean source_list)
         throws TaxonNotFoundException, MultipleHitsException, BadInputException {
+        return doAbout(graphDb, source_list, false);
+    }
+
+
+    public HashMap<String, Object> doAbout(GraphDatabaseService graphDb, Boolean source_list, Boolean cache_metrics)
+        throws TaxonNotFoundException, MultipleHitsException, BadInputException {
 
         GraphExplorer ge = new GraphExplorer(graphDb);
         HashMap<String, Object> draftTreeInfo = new HashMap<>();
@@ -79,7 +98,6 @@ public class tree_of_life_v3 extends ServerPlugin {
         if (synthID != null) {
             synthTreeID = synthID;
             if (!ge.checkExistingSynthTreeID(synthID)) {
-                ge.shutdownDB();
                 String ret = "Could not find a synthetic tree corresponding to the 'synth_id' arg: '"
                     + synthTreeID + "'. Leave blank to default to the current synthetic tree.";
                 throw new BadInputException(ret);
@@ -88,35 +106,33 @@ public class tree_of_life_v3 extends ServerPlugin {
             synthTreeID = ge.getMostRecentSynthTreeID();
         }
         
-        try {
-            // Most information will come from the synthesis metadata node
-            Node meta = ge.getSynthesisMetaNodeByName(synthTreeID);
-            
-            // general info
-            draftTreeInfo.put("synth_id", synthTreeID);
-            draftTreeInfo.put("date_created", meta.getProperty("date_completed"));
-            draftTreeInfo.put("taxonomy_version", meta.getProperty("taxonomy_version"));
-
-            // root node info - collect into separate object ('blob')
-            //HashMap<String, Object> rootInfo = ge.getNodeBlob((String)meta.getProperty("root_ot_node_id"), synthTreeID);
-            Node root = ge.findGraphNodeByOTTNodeID((String)meta.getProperty("root_ot_node_id"));
-            HashMap<String, Object> rootInfo = ge.getNodeBlob(root, synthTreeID, null);
-            draftTreeInfo.put("root", rootInfo);
-            
-            // tree constituents
-            draftTreeInfo.put("num_source_studies", meta.getProperty("num_source_studies"));
-            draftTreeInfo.put("num_source_trees", meta.getProperty("num_source_trees"));
-
-            if (returnSourceList) {
-                Node sourceMapNode = ge.getSourceMapNodeByName(synthTreeID);
-                draftTreeInfo.put("source_list", Arrays.asList((String[]) meta.getProperty("sources")));
-                HashMap<String, Object> sourceMap = ge.getSourceIDMap(new HashSet<>((ArrayList<String>)sourceMapNode.getPropertyKeys()), synthTreeID);
-                draftTreeInfo.put("source_id_map", sourceMap);
-            }
-            draftTreeInfo.put("filtered_flags", Arrays.asList((String[]) meta.getProperty("filtered_flags")));
-                
-        } finally {
-            ge.shutdownDB();
+        // Most information will come from the synthesis metadata node
+        Node meta = ge.getSynthesisMetaNodeByName(synthTreeID);
+        
+        // general info
+        draftTreeInfo.put("synth_id", synthTreeID);
+        draftTreeInfo.put("date_created", meta.getProperty("date_completed"));
+        draftTreeInfo.put("taxonomy_version", meta.getProperty("taxonomy_version"));
+
+        // root node info - collect into separate object ('blob')
+        //HashMap<String, Object> rootInfo = ge.getNodeBlob((String)meta.getProperty("root_ot_node_id"), synthTreeID);
+        Node root = ge.findGraphNodeByOTTNodeID((String)meta.getProperty("root_ot_node_id"));
+        HashMap<String, Object> rootInfo = ge.getNodeBlob(root, synthTreeID, null);
+        draftTreeInfo.put("root", rootInfo);
+        
+        // tree constituents
+        draftTreeInfo.put("num_source_studies", meta.getProperty("num_source_studies"));
+        draftTreeInfo.put("num_source_trees", meta.getProperty("num_source_trees"));
+
+        if (returnSourceList) {
+            draftTreeInfo.put("source_list", Arrays.asList((String[]) meta.getProperty("sources")));
+            HashMap<String, Object> sourceMap = ge.getSourceIDMap(
+                new HashSet<>(ge.getSourceDictionary(synthTreeID).getMappedSources()), synthTreeID);
+            draftTreeInfo.put("source_id_map", sourceMap);
+        }
+        draftTreeInfo.put("filtered_flags", Arrays.asList((String[]) meta.getProperty("filtered_flags")));
+        if (cache_metrics != null && cache_metrics == true) {
+            draftTreeInfo.put("cache_metrics", ge.getCacheMetrics(synthTreeID));
         }
         return draftTreeInfo;
     }
@@ -200,7 +216,6 @@ public class tree_of_life_v3 extends ServerPlugin {
         if (synthID != null) {
             synthTreeID = synthID;
             if (!ge.checkExistingSynthTreeID(synthID)) {
-                ge.shutdownDB();
                 String ret = "Could not find a synthetic tree corresponding to the 'synth_id' arg: '"
                     + synthTreeID + "'. Leave blank to default to the current synthetic tree.";
                 throw new BadInputException(ret);
@@ -221,11 +236,118 @@ public class tree_of_life_v3 extends ServerPlugin {
         HashMap<String, Object> sourceMap = ge.getSourceIDMap(uniqueSources, synthTreeID);
         //nodeIfo.put("synth_id", synthTreeID);
         nodeIfo.put("source_id_map", sourceMap);
-        
-        ge.shutdownDB();
+
         return nodeIfo;
     }
-    
+
+
+    @Description("Returns summary information about many nodes at once. Accepts any combination "
+        + "of node ids and ott ids. Results are listed in input order (node ids first, then ott "
+        + "ids), each with a `query` field holding the requested id, and share a single "
+        + "`source_id_map`. If any id is not in the graph, an exception listing them will be thrown.")
+    @PluginTarget(GraphDatabaseService.class)
+    public Representation node_info_batch (
+        @Source GraphDatabaseService graphDb,
+
+        @Description("A set of open tree node ids")
+        @Parameter(name = "node_ids", optional = true)
+        String[] nodeIDs,
+
+        @Description("A set of ott ids")
+        @Parameter(name = "ott_ids", optional = true)
+        long[] ottIDs,
+
+        @Description("Include the ancestral lineage of each node in the draft tree (see "
+            + "`node_info`). Ancestors shared by several nodes are only looked up once.")
+        @Parameter(name = "include_lineage", optional = true)
+        Boolean includeLineage
+
+        ) throws BadInputException {
+
+        return OTRepresentationConverter.convert(doNodeInfoBatch(graphDb, nodeIDs, ottIDs, includeLineage));
+    }
+
+    public HashMap<String, Object> doNodeInfoBatch(GraphDatabaseService graphDb,
+                                                   String[] nodeIDs,
+                                                   long[] ottIDs,
+                                                   Boolean includeLineage)
+        throws BadInputException {
+
+        int nQueries = (nodeIDs == null ? 0 : nodeIDs.length) + (ottIDs == null ? 0 : ottIDs.length);
+        if (nQueries < 1) {
+            String ret = "You must supply at least one node_id or ott_id.";
+            throw new BadInputException(ret);
+        } else if (MAX_NODE_INFO_BATCH >= 0 && nQueries > MAX_NODE_INFO_BATCH) {
+            String ret = "Too many ids (" + nQueries + "). The maximum for a single request is "
+                + MAX_NODE_INFO_BATCH + ".";
+            throw new BadInputException(ret);
+        }
+
+        GraphExplorer ge = new GraphExplorer(graphDb);
+        String synthTreeID = ge.getMostRecentSynthTreeID();
+
+        // resolve everything first, so bad ids are reported before any blobs are built. the whole
+        // batch goes through the tree's in-memory resolver; only ids that are not in the tree
+        // (nodes that are in the graph but not in the tree still have info) cost an index query
+        int[][] resolved = ge.getIdResolver(synthTreeID).resolveAll(ottIDs, nodeIDs);
+        SynthTreeIndex index = ge.getSynthTreeIndex(synthTreeID);
+        ArrayList<Object> queries = new ArrayList<>();
+        ArrayList<Node> nodes = new ArrayList<>();
+        ArrayList<Long> ottIdsNotFound = new ArrayList<>();
+        ArrayList<String> nodeIDsNotFound = new ArrayList<>();
+        for (int i = 0; i < resolved[1].length; i++) {
+            String nodeId = nodeIDs[i];
+            try {
+                nodes.add(resolved[1][i] != SynthTreeIndex.NO_NODE ? ge.getGraphNode(index, resolved[1][i])
+                    : ge.findGraphNodeByOTTNodeID(nodeId));
+                queries.add(nodeId);
+            } catch (TaxonNotFoundException e) {
+                nodeIDsNotFound.add(nodeId);
+            }
+        }
+        for (int i = 0; i < resolved[0].length; i++) {
+            long ottId = ottIDs[i];
+            try {
+                nodes.add(resolved[0][i] != SynthTreeIndex.NO_NODE ? ge.getGraphNode(index, resolved[0][i])
+                    : ge.findGraphTaxNodeByUID(String.valueOf(ottId)));
+                queries.add(ottId);
+            } catch (TaxonNotFoundException e) {
+                ottIdsNotFound.add(ottId);
+            }
+        }
+
+        HashMap<String, Object> res = new HashMap<>();
+        if (!ottIdsNotFound.isEmpty() || !nodeIDsNotFound.isEmpty()) {
+            res.put("ott_ids_not_found", ottIdsNotFound);
+            res.put("node_ids_not_found", nodeIDsNotFound);
+            throw new BadIdsException(ottIdsNotFound, nodeIDsNotFound, res);
+        }
+
+        // one source set and one blob per distinct node for the whole batch
+        HashSet<String> uniqueSources = new HashSet<>();
+        HashMap<Node, HashMap<String, Object>> blobs = new HashMap<>();
+        boolean lineages = includeLineage != null && includeLineage == true;
+        LinkedList<HashMap<String, Object>> results = new LinkedList<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            Node qNode = nodes.get(i);
+            HashMap<String, Object> nodeBlob = blobs.get(qNode);
+            if (nodeBlob == null) {
+                nodeBlob = ge.getNodeBlob(qNode, synthTreeID, uniqueSources);
+                blobs.put(qNode, nodeBlob);
+            }
+            HashMap<String, Object> nodeIfo = new HashMap<>(nodeBlob);
+            nodeIfo.put("query", queries.get(i));
+            if (lineages) {
+                nodeIfo.put("lineage", ge.getLineage(qNode, synthTreeID, uniqueSources, blobs));
+            }
+            results.add(nodeIfo);
+        }
+        res.put("results", results);
+        res.put("source_id_map", ge.getSourceIDMap(uniqueSources, synthTreeID));
+
+        return res;
+    }
+
     
     @Description("Get the MRCA of a set of nodes on the most current draft tree. Accepts "
         + "any combination of node ids and ott ids as input. Returns information about "
@@ -280,7 +402,6 @@ public class tree_of_life_v3 extends ServerPlugin {
         if (synthID != null) {
             synthTreeID = synthID;
             if (!ge.checkExistingSynthTreeID(synthID)) {
-                ge.shutdownDB();
                 String ret = "Could not find a synthetic tree corresponding to the 'synth_id' arg: '"
                     + synthTreeID + "'. Leave blank to default to the current synthetic tree.";
                 throw new BadInputException(ret);
@@ -289,45 +410,8 @@ public class tree_of_life_v3 extends ServerPlugin {
             synthTreeID = ge.getMostRecentSynthTreeID();
         }
         
-        // node_ids
-        if (nodeIDs != null && nodeIDs.length > 0) {
-            for (String nodeId : nodeIDs) {
-                Node n = null;
-                try {
-                    n = ge.findGraphNodeByOTTNodeID(nodeId);
-                } catch (TaxonNotFoundException e) {}
-                if (n != null) {
-                    // need to check if taxon is in the relevant synthetic tree
-                    if (ge.nodeIsInSyntheticTree(n, synthTreeID)) {
-                        tips.add(n);
-                    } else {
-                        nodesIDsNotInTree.add(nodeId);
-                    }
-                } else {
-                    // could not find node at all
-                    nodesIDsNotInTree.add(nodeId);
-                }
-            }
-        }
-        
-        // ott_ids
-        if (ottIDs != null && ottIDs.length > 0) {
-            for (long ottId : ottIDs) {
-                Node n = null;
-                try {
-                    n = ge.findGraphTaxNodeByUID(String.valueOf(ottId));
-                } catch (TaxonNotFoundException e) {}
-                if (n != null) {
-                    if (ge.nodeIsInSyntheticTree(n, synthTreeID)) {
-                        tips.add(n);
-                    } else { 
-                        ottIdsNotInTree.add(ottId);
-                    }
-                } else {
-                    ottIdsNotInTree.add(ottId);
-                }
-            }
-        }
+        // node_ids and ott_ids
+        resolveTips(ge, synthTreeID, nodeIDs, ottIDs, tips, nodesIDsNotInTree, ottIdsNotInTree);
 
         HashMap<String, Object> res = new HashMap<>();
         Node mrca = ge.getDraftTreeMRCA(tips, synthTreeID);
@@ -354,7 +438,6 @@ public class tree_of_life_v3 extends ServerPlugin {
             res.put("nearest_taxon", mrtaInfo);
         }
 
-        ge.shutdownDB();
 
         if (!ottIdsNotInTree.isEmpty() || !nodesIDsNotInTree.isEmpty())
             throw new BadIdsException(ottIdsNotInTree, nodesIDsNotInTree, res);
@@ -363,6 +446,45 @@ public class tree_of_life_v3 extends ServerPlugin {
     }
     
     
+    // resolve node ids and ott ids to nodes of the synthetic tree in bulk, through the tree's
+    // in-memory resolver (no index query per id). tips are added in input order, node ids
+    // first; ids that are not in the tree (or not in the graph at all) go to the not-in-tree lists
+    static void resolveTips (GraphExplorer ge, String synthTreeID, String[] nodeIDs, long[] ottIDs,
+            ArrayList<Node> tips, ArrayList<String> nodesIDsNotInTree, ArrayList<Long> ottIdsNotInTree) {
+        SynthTreeIndex index = ge.getSynthTreeIndex(synthTreeID);
+        for (int id : resolveTipIDs(ge, synthTreeID, nodeIDs, ottIDs, nodesIDsNotInTree, ottIdsNotInTree)) {
+            tips.add(ge.getGraphNode(index, id));
+        }
+    }
+    
+    
+    // as resolveTips, but returns the dense SynthTreeIndex ids of the tips. large batches are
+    // resolved in parallel; results are positional, so the output order is the input order
+    static int[] resolveTipIDs (GraphExplorer ge, String synthTreeID, String[] nodeIDs, long[] ottIDs,
+            ArrayList<String> nodesIDsNotInTree, ArrayList<Long> ottIdsNotInTree) {
+        int[][] resolved = ge.getIdResolver(synthTreeID).resolveAll(ottIDs, nodeIDs);
+        int[] ottRes = resolved[0];
+        int[] nodeRes = resolved[1];
+        int[] tips = new int[ottRes.length + nodeRes.length];
+        int nTips = 0;
+        for (int i = 0; i < nodeRes.length; i++) {
+            if (nodeRes[i] != SynthTreeIndex.NO_NODE) {
+                tips[nTips++] = nodeRes[i];
+            } else {
+                nodesIDsNotInTree.add(nodeIDs[i]);
+            }
+        }
+        for (int i = 0; i < ottRes.length; i++) {
+            if (ottRes[i] != SynthTreeIndex.NO_NODE) {
+                tips[nTips++] = ottRes[i];
+            } else {
+                ottIdsNotInTree.add(ottIDs[i]);
+            }
+        }
+        return Arrays.copyOf(tips, nTips);
+    }
+    
+    
     @Description("Return a tree with tips corresponding to the nodes identified in the "
         + "input set, that is consistent with topology of the most current draft tree. This "
         + "tree is equivalent to the minimal subtree induced on the draft tree by the set "
@@ -407,7 +529,6 @@ public class tree_of_life_v3 extends ServerPlugin {
                                                     Boolean idsForUnnamedBoxed)
         throws BadInputException
     {
-        ArrayList<Node> tips = new ArrayList<>();
         ArrayList<Long> ottIdsNotInTree = new ArrayList<>();
         ArrayList<String> nodesIDsNotInTree = new ArrayList<>();
         String labelFormat = null;
@@ -443,7 +564,6 @@ public class tree_of_life_v3 extends ServerPlugin {
         if (synthID != null) {
             synthTreeID = synthID;
             if (!ge.checkExistingSynthTreeID(synthID)) {
-                ge.shutdownDB();
                 String ret = "Could not find a synthetic tree corresponding to the 'synth_id' arg: '"
                     + synthTreeID + "'. Leave blank to default to the current synthetic tree.";
                 throw new BadInputException(ret);
@@ -452,47 +572,10 @@ public class tree_of_life_v3 extends ServerPlugin {
             synthTreeID = ge.getMostRecentSynthTreeID();
         }
         
-        // node_ids
-        if (nodeIDs != null && nodeIDs.length > 0) {
-            for (String nodeId : nodeIDs) {
-                Node n = null;
-                try {
-                    n = ge.findGraphNodeByOTTNodeID(nodeId);
-                } catch (TaxonNotFoundException e) {}
-                if (n != null) {
-                    // need to check if taxon is in the relevant synthetic tree
-                    if (ge.nodeIsInSyntheticTree(n, synthTreeID)) {
-                        tips.add(n);
-                    } else {
-                        nodesIDsNotInTree.add(nodeId);
-                    }
-                } else {
-                    // could not find node at all
-                    nodesIDsNotInTree.add(nodeId);
-                }
-            }
-        }
-        
-        // ott_ids
-        if (ottIDs != null && ottIDs.length > 0) {
-            for (long ottId : ottIDs) {
-                Node n = null;
-                try {
-                    n = ge.findGraphTaxNodeByUID(String.valueOf(ottId));
-                } catch (TaxonNotFoundException e) {}
-                if (n != null) {
-                    if (ge.nodeIsInSyntheticTree(n, synthTreeID)) {
-                        tips.add(n);
-                    } else { 
-                        ottIdsNotInTree.add(ottId);
-                    }
-                } else {
-                    ottIdsNotInTree.add(ottId);
-                }
-            }
-        }
+        // node_ids and ott_ids
+        int[] tips = resolveTipIDs(ge, synthTreeID, nodeIDs, ottIDs, nodesIDsNotInTree, ottIdsNotInTree);
         
-        if (tips.size() < 2) {
+        if (tips.length < 2) {
             String ret = "Not enough valid node ids provided to construct a subtree "
                 + "(there must be at least two).";
             throw new BadInputException(ret);
@@ -588,8 +671,6 @@ public class tree_of_life_v3 extends ServerPlugin {
         // so. very. clunky. what a terrible design...
         int newickDepth = -1; // negative is no limit
         int argusonDepth = 5;
-        Integer maxNumTipsNewick = 100000; // about 40 seconds
-        Integer maxNumTipsArguson = 25000; // splitting out since about 5x slower
         String labelFormat = null; // only used for newick
         String treeFormat = null;
         
@@ -640,7 +721,6 @@ public class tree_of_life_v3 extends ServerPlugin {
         if (synthID != null) {
             synthTreeID = synthID;
             if (!ge.checkExistingSynthTreeID(synthID)) {
-                ge.shutdownDB();
                 String ret = "Could not find a synthetic tree corresponding to the 'synth_id' arg: '"
                     + synthTreeID + "'. Leave blank to default to the current synthetic tree.";
                 throw new BadInputException(ret);
@@ -650,6 +730,52 @@ public class tree_of_life_v3 extends ServerPlugin {
         }
         
         // get start node
+        qNode = getSubtreeStartNode(ge, synthTreeID, nodeID, ottID);
+        
+        if ("newick".equals(treeFormat)) {
+            // early exit without have to build a tree
+            if (newickDepth == -1) {
+                Integer nTips = ge.getNumTipDescendants(qNode, synthTreeID);
+                if (nTips > MAX_TIPS_NEWICK) {
+                    throw new BadInputException(treeTooBigError(nTips, MAX_TIPS_NEWICK));
+                }
+            } else {
+                // still don't have to build tree. single pass over the in-memory index that stops as soon as the cap is crossed
+                int nTips = ge.getSubtreeNumTips(synthTreeID, qNode, newickDepth, MAX_TIPS_NEWICK);
+                if (nTips > MAX_TIPS_NEWICK) {
+                    throw new BadInputException(treeTooBigError(MAX_TIPS_NEWICK));
+                }
+            }
+            // written in one pass into a single buffer; no intermediate JadeTree
+            StringBuilder newick = new StringBuilder();
+            Set<String> studies = new HashSet<>();
+            try {
+                ge.writeDepthLimitedSubtreeNewick(synthTreeID, qNode, newickDepth, labelFormat, idsForUnnamed, newick, studies);
+            } catch (IOException e) {
+                throw new IllegalStateException(e); // StringBuilder does not throw
+            }
+            responseMap.put("supporting_studies", new ArrayList<String>(studies));
+            responseMap.put("newick", newick.toString());
+            
+        } else {
+            int nTips = ge.getSubtreeNumTips(synthTreeID, qNode, argusonDepth, MAX_TIPS_ARGUSON);
+            if (nTips > MAX_TIPS_ARGUSON) {
+                throw new BadInputException(treeTooBigError(MAX_TIPS_ARGUSON));
+            }
+            // construct arguson
+            HashMap<String, Object> res = ge.getArgusonData(qNode, synthTreeID, argusonDepth);
+            responseMap.put("arguson", res);
+        }
+        return responseMap;
+    }
+    
+    
+    /**
+     * Find the subtree root for a `node_id` or `ott_id` argument (exactly one of them is non-null)
+     * and check that it is in the synthetic tree.
+     */
+    static Node getSubtreeStartNode (GraphExplorer ge, String synthTreeID, String nodeID, Long ottID) throws BadInputException {
+        Node qNode = null;
         if (ottID != null) {
             Node n = null;
             try {
@@ -660,7 +786,6 @@ public class tree_of_life_v3 extends ServerPlugin {
             qNode = n;
             // check that startNode is indeed in the synthetic tree. for later with multi-trees
             if (!ge.nodeIsInSyntheticTree(qNode, synthTreeID)) {
-                ge.shutdownDB();
                 String ret = "Queried OTT id " + ottID + " is in the graph, but "
                     + "not in the draft tree: " + synthTreeID;
                 throw new BadInputException(ret);
@@ -675,68 +800,38 @@ public class tree_of_life_v3 extends ServerPlugin {
             qNode = n;
             // check that startNode is indeed in the synthetic tree
             if (!ge.nodeIsInSyntheticTree(qNode, synthTreeID)) {
-                ge.shutdownDB();
                 String ret = "Queried \"node_id\": " + nodeID + " is in the graph, but "
                     + "not in the draft tree: " + synthTreeID;
                 throw new BadInputException(ret);
             }
         }
-        
-        if ("newick".equals(treeFormat)) {
-            // early exit without have to build a tree
-            if (newickDepth == -1) {
-                Integer nTips = ge.getNumTipDescendants(qNode, synthTreeID);
-                if (nTips > maxNumTipsNewick) {
-                     ge.shutdownDB();
-                    throw new BadInputException(treeTooBigError(nTips, maxNumTipsNewick));
-                }
-            } else {
-                // still don't have to build tree, but have to do traversal
-                Integer nTips = ge.getSubtreeNumTips(synthTreeID, qNode, newickDepth);
-                if (nTips > maxNumTipsNewick) {
-                    ge.shutdownDB();
-                    throw new BadInputException(treeTooBigError(nTips, maxNumTipsNewick));
-                }
-            }
-            JadeTree tree = null;
-            try {
-                tree = ge.reconstructDepthLimitedSubtree(synthTreeID, qNode, newickDepth, labelFormat, idsForUnnamed);
-                Set<String> studies = ge.getSupportingStudies(tree, synthTreeID);
-                responseMap.put("supporting_studies", new ArrayList<String>(studies));
-            } finally {
-                ge.shutdownDB();
-            }
-            responseMap.put("newick", tree.getRoot().getNewick(false) + ";");
-            
-        } else {
-            Integer nTips = ge.getSubtreeNumTips(synthTreeID, qNode, argusonDepth);
-            if (nTips > maxNumTipsArguson) {
-                ge.shutdownDB();
-                throw new BadInputException(treeTooBigError(nTips, maxNumTipsArguson));
-            }
-            // construct arguson
-            HashMap<String, Object> res = ge.getArgusonData(qNode, synthTreeID, argusonDepth);
-            responseMap.put("arguson", res);
-        }
-        return responseMap;
+        return qNode;
     }
     
     
     // should have a bunch of generic error writers for those that occur a lot
-    private String treeTooBigError (int ntips, int maxTips) {
+    static String treeTooBigError (int ntips, int maxTips) {
         String ret = "Requested tree (" + ntips + " tips) is larger than currently "
             + "allowed by this service (" + maxTips + " tips). For larger trees, "
             + "please download the full tree directly from: http://files.opentreeoflife.org/trees/";
         return ret;
     }
     
-    private String badOTTIDError (Long ottID) {
+    // for when counting stopped at the cap, so the exact size is not known
+    static String treeTooBigError (int maxTips) {
+        String ret = "Requested tree is larger than currently "
+            + "allowed by this service (" + maxTips + " tips). For larger trees, "
+            + "please download the full tree directly from: http://files.opentreeoflife.org/trees/";
+        return ret;
+    }
+    
+    private static String badOTTIDError (Long ottID) {
         String ret = "Could not find any synthetic tree nodes corresponding to the OTT id provided ("
             + ottID + ").";
         return ret;
     }
     
-    private String badNodeIDError (String nodeID) {
+    private static String badNodeIDError (String nodeID) {
         String ret = "Could not find any synthetic tree nodes corresponding to the node id provided ("
             + nodeID + ").";
         return ret;
@@ -809,7 +904,6 @@ public class tree_of_life_v3 extends ServerPlugin {
             }
             graphInfo.put("synth_trees", trees);
         } else {
-            ge.shutdownDB();
             throw new BadInputException("Could not find any draft synthetic trees in the graph.");
         }
         return graphInfo;
@@ -857,7 +951,6 @@ public class tree_of_life_v3 extends ServerPlugin {
         if (synthID != null) {
             synthTreeID = synthID;
             if (!ge.checkExistingSynthTreeID(synthID)) {
-                ge.shutdownDB();
                 String ret = "Could not find a synthetic tree corresponding to the 'synth_id' arg: '"
                     + synthTreeID + "'. Leave blank to default to the current synthetic tree.";
                 throw new BadInputException(ret);
@@ -865,7 +958,6 @@ public class tree_of_life_v3 extends ServerPlugin {
         } else { // default to most recent
             synthTreeID = ge.getMostRecentSynthTreeID();
         }
-        ge.shutdownDB();
         
         String tree = getSourceTree(source, synthTreeID);
 
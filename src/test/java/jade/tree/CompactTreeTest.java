@@ -0,0 +1,85 @@
+package jade.tree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.PrimitiveIterator;
+import org.junit.Test;
+
+public class CompactTreeTest {
+
+    private static CompactTree read (String newick) throws IOException {
+        return CompactTree.readNewick(new NewickParser(new StringReader(newick)));
+    }
+
+
+    private static String roundTrip (String newick, boolean branchLengths) throws IOException {
+        CompactTree tree = read(newick);
+        StringBuilder sb = new StringBuilder();
+        tree.writeNewick(tree.getRoot(), sb, branchLengths);
+        return sb.toString();
+    }
+
+
+    @Test
+    public void roundTrips () throws IOException {
+        for (String newick : new String[] {"((a,b)c,d)e;", "(a:1.5,(b:0.25,c)d:2.0)e;", "(,a);", "a;"}) {
+            assertEquals(newick, roundTrip(newick, true));
+        }
+        assertEquals("((a,b)c,d)e;", roundTrip("((a:1,b:2)c:3,d)e;", false));
+    }
+
+
+    @Test
+    public void quotedLabels () throws IOException {
+        // labels that need quotes keep them, with inner quotes doubled
+        assertEquals("('a b','it''s','(x):y;[z]',' c')r;", roundTrip("('a b','it''s','(x):y;[z]',' c')r;", true));
+        // and labels that do not are written bare
+        assertEquals("(a,b_c)d;", roundTrip("( a , 'b_c' ) d ;", true));
+    }
+
+
+    @Test
+    public void structure () throws IOException {
+        CompactTree tree = read("((a,b)c,d)e;");
+        assertEquals(5, tree.size());
+        assertEquals(0, tree.getRoot());
+        assertEquals("c", tree.getLabel(tree.getFirstChild(0)));
+        assertEquals("d", tree.getLabel(tree.getNextSibling(tree.getFirstChild(0))));
+        assertEquals(2, tree.getChildCount(1));
+        assertTrue(tree.isTip(2));
+        assertFalse(tree.hasBranchLengths());
+        StringBuilder pre = new StringBuilder();
+        for (PrimitiveIterator.OfInt it = tree.preorder(0); it.hasNext();) {
+            pre.append(tree.getLabel(it.nextInt()));
+        }
+        assertEquals("ecabd", pre.toString());
+        StringBuilder post = new StringBuilder();
+        for (PrimitiveIterator.OfInt it = tree.postorder(1); it.hasNext();) {
+            post.append(tree.getLabel(it.nextInt()));
+        }
+        assertEquals("abc", post.toString());
+        assertNull(read(""));
+    }
+
+
+    @Test
+    public void deepTree () throws IOException {
+        int depth = 100000; // traversal and writing must not recurse either
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            sb.append('(');
+        }
+        sb.append("t0");
+        for (int i = 1; i <= depth; i++) {
+            sb.append(",t").append(i).append(')');
+        }
+        sb.append(';');
+        assertEquals(2 * depth + 1, read(sb.toString()).size());
+        assertEquals(sb.toString(), roundTrip(sb.toString(), false));
+    }
+}
@@ -0,0 +1,151 @@
+package jade.tree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import jade.tree.deprecated.JadeTree;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import org.junit.Test;
+
+public class NewickParserTest {
+
+    private static NewickParser parser (String newick) {
+        return new NewickParser(new StringReader(newick));
+    }
+
+
+    // the nodes of the next tree as "id:parentID:label:numChildren", in delivery order
+    private static ArrayList<String> nodes (NewickParser np) throws IOException {
+        ArrayList<String> res = new ArrayList<>();
+        int ev;
+        while ((ev = np.next()) == NewickParser.NODE) {
+            res.add(np.getID() + ":" + np.getParentID() + ":" + np.getLabel() + ":" + np.getNumChildren());
+        }
+        assertEquals(NewickParser.TREE_END, ev);
+        return res;
+    }
+
+
+    private static void assertMalformed (String newick) throws IOException {
+        NewickParser np = parser(newick);
+        try {
+            while (np.next() != NewickParser.EOF) {
+            }
+            fail("no error for " + newick);
+        } catch (NewickParseException e) {
+            assertTrue(e.getPosition() >= 0 && e.getPosition() <= newick.length());
+        }
+    }
+
+
+    @Test
+    public void nodesArePostorderWithPreorderIDs () throws IOException {
+        NewickParser np = parser("((a,b)c,d)e;");
+        assertEquals("[2:1:a:0, 3:1:b:0, 1:0:c:2, 4:0:d:0, 0:-1:e:2]", nodes(np).toString());
+        assertEquals(NewickParser.EOF, np.next());
+    }
+
+
+    @Test
+    public void branchLengths () throws IOException {
+        NewickParser np = parser("(a:1.5,b)c:2e-3;");
+        assertEquals(NewickParser.NODE, np.next());
+        assertEquals(1.5, np.getBranchLength(), 0);
+        assertEquals(NewickParser.NODE, np.next());
+        assertTrue(Double.isNaN(np.getBranchLength()));
+        assertEquals(NewickParser.NODE, np.next());
+        assertEquals(0.002, np.getBranchLength(), 0);
+        assertTrue(np.getNumChildren() == 2 && !np.isTip());
+    }
+
+
+    @Test
+    public void severalTrees () throws IOException {
+        NewickParser np = parser("(a,b)c;\n(d,e)f;\n");
+        assertEquals(3, nodes(np).size());
+        assertEquals("[1:0:d:0, 2:0:e:0, 0:-1:f:2]", nodes(np).toString());
+        assertEquals(NewickParser.EOF, np.next());
+    }
+
+
+    @Test
+    public void quotedLabels () throws IOException {
+        NewickParser np = parser("('a b','it''s','(x,y):z;[w]')'';");
+        assertEquals("[1:0:a b:0, 2:0:it's:0, 3:0:(x,y):z;[w]:0, 0:-1::3]", nodes(np).toString());
+    }
+
+
+    @Test
+    public void commentsAndBlanks () throws IOException {
+        NewickParser np = parser("( a [comment, with (parens)] ,\n b c :1 [x])[&R] d ;");
+        assertEquals("[1:0:a:0, 2:0:b c:0, 0:-1:d:2]", nodes(np).toString());
+    }
+
+
+    @Test
+    public void emptyLeaves () throws IOException {
+        assertEquals("[1:0::0, 2:0:a:0, 0:-1::2]", nodes(parser("(,a);")).toString());
+        assertEquals("[1:0:a:0, 2:0::0, 0:-1::2]", nodes(parser("(a,);")).toString());
+        assertEquals("[1:0::0, 2:0::0, 3:0::0, 0:-1::3]", nodes(parser("(,,);")).toString());
+    }
+
+
+    @Test
+    public void malformed () throws IOException {
+        assertMalformed("(a,b)c");       // missing ';'
+        assertMalformed("((a,b)c;");     // missing ')'
+        assertMalformed("(a,b));");      // unbalanced ')'
+        assertMalformed("a,b;");         // ',' outside parentheses
+        assertMalformed("(a:x,b);");     // bad branch length
+        assertMalformed("(a:1:2,b);");   // second branch length
+        assertMalformed("(a b:1 c,d);"); // label after a branch length
+        assertMalformed("('a,b);");      // unterminated quote
+        assertMalformed("(a,b)[c;");     // unterminated comment
+        assertMalformed(";");            // empty tree
+        assertMalformed("(a,b)c(d);");   // '(' after a label
+    }
+
+
+    @Test
+    public void emptyInput () throws IOException {
+        assertEquals(NewickParser.EOF, parser("").next());
+        assertEquals(NewickParser.EOF, parser(" \n[comment]\n").next());
+    }
+
+
+    @Test
+    public void readTree () throws IOException {
+        NewickParser np = parser("((a,b)c,d)e;(f,g)h;");
+        JadeTree tree = np.readTree();
+        assertEquals(3, tree.getExternalNodeCount());
+        assertEquals("e", tree.getRoot().getName());
+        assertEquals("((a,b)c,d)e;", tree.getRoot().getNewick(false) + ";");
+        assertEquals(2, np.readTree().getExternalNodeCount());
+        assertNull(np.readTree());
+    }
+
+
+    @Test
+    public void deepTree () throws IOException {
+        int depth = 100000; // far deeper than a recursive parser could go
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            sb.append('(');
+        }
+        sb.append("t0");
+        for (int i = 1; i <= depth; i++) {
+            sb.append(",t").append(i).append(')');
+        }
+        sb.append(';');
+        NewickParser np = parser(sb.toString());
+        int n = 0;
+        while (np.next() == NewickParser.NODE) {
+            n++;
+        }
+        assertEquals(2 * depth + 1, n);
+    }
+}
@@ -227,6 +227,8 @@ translations = [('/v2/study/', '/phylesystem/v1/study/'),
                 # treemachine
                 ('/v2/graph/', '/db/data/ext/graph/graphdb/'),
                 ('/v2/tree_of_life/', '/db/data/ext/tree_of_life/graphdb/'),
+                # unmanaged extension (SubtreeStreamResource); must come before the v3 plugin prefix
+                ('/v3/tree_of_life/subtree_stream', '/treemachine/v3/tree_of_life/subtree_stream'),
                 ('/v3/tree_of_life/', '/db/data/ext/tree_of_life_v3/graphdb/'),
                 # taxomachine
                 ('/v2/tnrs/', '/db/data/ext/tnrs_v2/graphdb/'),
@@ -11,6 +11,14 @@ basic_about_results = [field(u'num_source_studies', check_integer),
                        field(u'root', check_node_blob),
                        field(u'synth_id', check_string)]
 
+cache_metrics_fields = [field(u'synth_tree_registry', check_blob([field(u'hits', check_integer),
+                                                                   field(u'misses', check_integer),
+                                                                   field(u'reloads', check_integer)])),
+                        field(u'lineage_cache', check_blob([field(u'size', check_integer),
+                                                             field(u'max_size', check_integer),
+                                                             field(u'hits', check_integer),
+                                                             field(u'misses', check_integer)]))]
+
 status = 0
 
 status += \
@@ -25,4 +33,10 @@ simple_test("/v3/tree_of_life/about",
                        [field(u'source_list', check_list(check_string)),
                         field(u'source_id_map', check_source_id_map)]))
 
+status += \
+simple_test("/v3/tree_of_life/about",
+            {u'include_cache_metrics': True},
+            check_blob(basic_about_results +
+                       [field(u'cache_metrics', check_blob(cache_metrics_fields))]))
+
 sys.exit(status)
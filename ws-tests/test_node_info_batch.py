@@ -0,0 +1,23 @@
+import sys
+from check import *
+
+status = 0
+
+batch_result_fields = node_blob_fields + [field(u'query', lambda x, where: True),
+                                          opt_field(u'lineage', check_list(check_node_blob))]
+
+status += \
+simple_test("/v3/tree_of_life/node_info_batch",
+            {u'node_ids': [u"mrcaott3504ott396446", u"ott396446"],
+             u'ott_ids': [396446],
+             u'include_lineage': True},
+            check_blob([field(u'results', check_list(check_blob(batch_result_fields))),
+                        field(u'source_id_map', check_source_id_map)]),
+            is_right=(lambda x: len(x[u'results']) == 3 and x[u'results'][2][u'query'] == 396446))
+
+status += \
+simple_test("/v3/tree_of_life/node_info_batch",
+            {u'ott_ids': [396446, 123456789]},
+            expected_status=400)
+
+sys.exit(status)
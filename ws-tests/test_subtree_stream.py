@@ -0,0 +1,53 @@
+import sys, urllib
+from check import *
+from opentreetesting import test_http_json_method
+from opentreetesting import config
+
+# subtree_stream is a GET with query parameters that returns plain newick, so not simple_test.
+# it is an unmanaged extension: the server needs org.neo4j.server.thirdparty_jaxrs_classes=opentree.plugins=/treemachine
+
+def stream_test(params, expected_status=200, is_right=(lambda x: True)):
+    url = config('host', 'apihost') + "/v3/tree_of_life/subtree_stream?" + urllib.urlencode(params)
+    try:
+        (win, output) = test_http_json_method(url, verb='GET',
+                                              expected_status=expected_status,
+                                              return_bool_data=True,
+                                              is_json=False)
+        if not win:
+            print '** http lose'
+            return 1
+        if is_right(output):
+            return 0
+        print '** result is not right', output[:200]
+        return 1
+    except Exception, e:
+        print '** exception', e
+        return 1
+
+def is_newick(x):
+    x = x.strip()
+    return x.startswith(u'(') and x.endswith(u';')
+
+status = 0
+
+status += stream_test({'node_id': 'ott3504'}, is_right=is_newick)
+
+# the same newick as the non-streaming subtree service
+subtree = {}
+status += \
+simple_test("/v3/tree_of_life/subtree",
+            {u'node_id': u'ott217260', u'include_all_node_labels': True},
+            check_blob([field(u'newick', check_string),
+                        field(u'supporting_studies', check_list(check_string))]),
+            is_right=lambda x: subtree.update(x) or True)
+status += stream_test({'node_id': 'ott217260', 'include_all_node_labels': 'true'},
+                      is_right=lambda x: x.strip() == subtree.get(u'newick', u'').strip())
+
+status += stream_test({'ott_id': 217260, 'height_limit': 1}, is_right=is_newick)
+
+# exactly one of node_id and ott_id
+status += stream_test({'node_id': 'ott217260', 'ott_id': 217260}, expected_status=400)
+status += stream_test({'node_id': 'ott217260', 'label_format': 'bogus'}, expected_status=400)
+status += stream_test({'node_id': 'not_a_node_id'}, expected_status=400)
+
+sys.exit(status)